@@ -0,0 +1,81 @@
+#!/bin/sh
+#
+# Launches SneK from a jar with an application class-data-sharing archive.
+#
+# The first launch (or any launch after the classes change) compiles the
+# sources if there are no classes yet, packs them with the icon into
+# out/snek.jar, and records out/snek.jsa from a training run that exits as
+# soon as the first frame is painted. Every launch after that maps the
+# archive, so startup skips loading and verifying the classes it covers. On a
+# host with no display there is no training run, and the launch goes ahead
+# without the archive.
+#
+# Usage: ./snek.sh [--time] [--train] [main-class [args...]]
+#   --time    report the time from launch to the first frame
+#   --train   record the archive again even if it is up to date
+#
+# Needs JDK 13 or later (for -XX:ArchiveClassesAtExit). Set JAVA_HOME to
+# choose the JDK, and SNEK_CLASSES to launch from classes compiled elsewhere.
+
+set -e
+cd "$(dirname "$0")"
+
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+JAR_TOOL="${JAVA_HOME:+$JAVA_HOME/bin/}jar"
+JAVAC="${JAVA_HOME:+$JAVA_HOME/bin/}javac"
+CLASSES="${SNEK_CLASSES:-out/production/Snake}"
+JAR=out/snek.jar
+ARCHIVE=out/snek.jsa
+
+TIMING=false
+TRAIN=false
+while [ $# -gt 0 ]; do
+    case "$1" in
+        --time) TIMING=true; shift ;;
+        --train) TRAIN=true; shift ;;
+        *) break ;;
+    esac
+done
+
+# Epoch milliseconds, where date supports it.
+now() {
+    date +%s%3N 2>/dev/null | grep -E '^[0-9]+$' || true
+}
+
+if [ ! -f "$CLASSES/Game.class" ] || [ -n "$(find src -newer "$CLASSES/Game.class" -type f | head -n 1)" ]; then
+    mkdir -p "$CLASSES"
+    "$JAVAC" --release 13 -d "$CLASSES" src/*.java
+fi
+
+if [ ! -f "$JAR" ] || [ -n "$(find "$CLASSES" icon -newer "$JAR" -type f | head -n 1)" ]; then
+    "$JAR_TOOL" --create --file "$JAR" --main-class Game -C "$CLASSES" . -C icon .
+    rm -f "$ARCHIVE"
+fi
+
+# Whether there is no display to paint on: no X or Wayland display outside
+# macOS and Windows.
+headless() {
+    case "$(uname -s)" in
+        Darwin|CYGWIN*|MINGW*|MSYS*) return 1 ;;
+    esac
+    [ -z "$DISPLAY" ] && [ -z "$WAYLAND_DISPLAY" ]
+}
+
+# Training paints a frame, so it cannot run without a display, and a failed
+# run must not stop the launch; either way the launch goes ahead without an
+# archive, and the next launch tries again.
+if [ "$TRAIN" = true ] || [ ! -f "$ARCHIVE" ]; then
+    if headless; then
+        echo "snek.sh: no display, so no class-data archive is recorded; launching without one." >&2
+    elif ! "$JAVA" -XX:ArchiveClassesAtExit="$ARCHIVE" -Dsnek.training=true -jar "$JAR"; then
+        echo "snek.sh: the training run failed; launching without a class-data archive." >&2
+        rm -f "$ARCHIVE"
+    fi
+fi
+
+if [ $# -eq 0 ]; then
+    set -- Game
+fi
+exec "$JAVA" -XX:SharedArchiveFile="$ARCHIVE" -Xshare:auto \
+    -Dsnek.timing="$TIMING" -Dsnek.launched="$(now)" \
+    -cp "$JAR" "$@"
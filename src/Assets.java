@@ -0,0 +1,54 @@
+import java.awt.*;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assets
+ *
+ * <p>Images bundled on the classpath, loaded on first request and cached by
+ * resource name. Images are created through the {@code Toolkit}, which
+ * decodes them in the background when they are first drawn, so asking for
+ * one never puts an image decoder on the startup path.
+ */
+public final class Assets {
+
+    /*
+     * Images loaded so far, by resource name.
+     */
+    private static final Map<String, Image> IMAGES;
+
+    /* init */
+    static {
+        IMAGES = new ConcurrentHashMap<>();
+    }
+
+    /*
+     * Not instantiable.
+     */
+    private Assets(){}
+
+    /**
+     * Finds an image on the classpath.
+     *
+     * @param name the resource name, absolute from the root of the classpath
+     * @return the image, or {@code null} if there is no such resource
+     */
+    public static Image image(final String name){
+        return IMAGES.computeIfAbsent(name, Assets::load);
+    }
+
+    /*
+     * Creates an image from a resource, or returns null and says so if the
+     * resource is missing. A missing asset is not worth a stack trace.
+     */
+    private static Image load(final String name){
+        final URL url = Assets.class.getResource(name);
+        if(url == null) {
+            System.err.println("Missing asset: " + name);
+            return null;
+        }
+        return Toolkit.getDefaultToolkit().createImage(url);
+    }
+
+}
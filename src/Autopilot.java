@@ -0,0 +1,196 @@
+/**
+ * Autopilot
+ *
+ * <p>A bot that steers toward the nearest reachable apple by breadth-first
+ * search over an {@code Engine}-layout board, avoiding the walls, the snake
+ * and mines. If no apple can be reached safely it chases its own tail, and
+ * failing that it heads for the largest open region.
+ *
+ * <p>All searches run over buffers owned by the {@code Autopilot}: an
+ * {@code int} queue, a visited-stamp array and a first-move array. Nothing is
+ * allocated per decision, so an {@code Autopilot} may be kept per snake and
+ * asked for a move every tick. It is not thread-safe.
+ */
+public final class Autopilot implements SessionHost.Pilot {
+
+    /*
+     * Directions in ordinal order, and the cell offsets of one step in each.
+     */
+    private static final Game.GridPanel.Direction[] DIRECTIONS;
+    private static final int[] OFFSETS;
+
+    /*
+     * Cells the snake must not enter.
+     */
+    private static final int BLOCKED;
+
+    /* init */
+    static {
+        DIRECTIONS = Game.GridPanel.Direction.values();
+        OFFSETS = new int[DIRECTIONS.length];
+        for(int i = 0; i < DIRECTIONS.length; i++) OFFSETS[i] = Engine.offset(DIRECTIONS[i]);
+        BLOCKED = Engine.WALL | Engine.BODY | Engine.MINE;
+    }
+
+    /*
+     * Search buffers. A cell has been visited by the current search if its
+     * stamp equals the current stamp.
+     */
+    private final int[] queue;
+    private final int[] stamps;
+    private final byte[] first;
+    private int stamp;
+
+    /**
+     * A public constructor for an {@code Autopilot}.
+     */
+    public Autopilot(){
+        queue = new int[Engine.CELLS];
+        stamps = new int[Engine.CELLS];
+        first = new byte[Engine.CELLS];
+    }
+
+    /**
+     * See {@code SessionHost.Pilot.steer(Engine)}.
+     */
+    @Override
+    public void steer(final Engine engine){
+        if(engine.length() == 0) return;
+        engine.steer(decide(engine.board(), engine.head(), engine.segment(0),
+                engine.length(), engine.getDirection()));
+    }
+
+    /**
+     * Chooses the next move.
+     *
+     * @param cells a board laid out as {@code Engine} lays out its board
+     * @param head the cell of the head of the snake
+     * @param tail the cell of the tail of the snake
+     * @param length the number of segments in the snake
+     * @param current the current direction
+     * @return the direction to move in
+     */
+    public Game.GridPanel.Direction decide(final byte[] cells,
+                                           final int head,
+                                           final int tail,
+                                           final int length,
+                                           final Game.GridPanel.Direction current){
+        int move = search(cells, head, -1);
+        if(move >= 0) {
+            //Only take the apple path if it leaves a way out.
+            final int n = head + OFFSETS[move];
+            if(area(cells, n, length) >= length || search(cells, n, tail) >= 0) return DIRECTIONS[move];
+        }
+        if(length > 1) {
+            move = search(cells, head, tail);
+            if(move >= 0) return DIRECTIONS[move];
+        }
+        int best = -1, bestArea = 0;
+        for(int d = 0; d < OFFSETS.length; d++) {
+            final int n = head + OFFSETS[d];
+            if((cells[n] & BLOCKED) != 0) continue;
+            final int a = area(cells, n, Integer.MAX_VALUE);
+            if(a > bestArea) {
+                best = d;
+                bestArea = a;
+            }
+        }
+        return best < 0? current: DIRECTIONS[best];
+    }
+
+    /*
+     * Breadth-first search from a cell to the nearest apple, or to the
+     * given target cell if it is not negative.
+     *
+     * Returns the ordinal of the first move on the path, or -1 if there
+     * is no path.
+     */
+    private int search(final byte[] cells, final int from, final int target){
+        final int s = nextStamp();
+        stamps[from] = s;
+        int read = 0, write = 0;
+        for(int d = 0; d < OFFSETS.length; d++) {
+            final int n = from + OFFSETS[d];
+            if(n == target) return d;
+            final int bits = cells[n];
+            if((bits & BLOCKED) != 0) continue;
+            if(target < 0 && (bits & Engine.APPLE) != 0) return d;
+            stamps[n] = s;
+            first[n] = (byte) d;
+            queue[write++] = n;
+        }
+        while(read < write) {
+            final int c = queue[read++];
+            for(int d = 0; d < OFFSETS.length; d++) {
+                final int n = c + OFFSETS[d];
+                if(stamps[n] == s) continue;
+                if(n == target) return first[c];
+                final int bits = cells[n];
+                if((bits & BLOCKED) != 0) continue;
+                if(target < 0 && (bits & Engine.APPLE) != 0) return first[c];
+                stamps[n] = s;
+                first[n] = first[c];
+                queue[write++] = n;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Counts the open cells reachable from the given cell, stopping once
+     * the count reaches the limit.
+     */
+    private int area(final byte[] cells, final int from, final int limit){
+        if((cells[from] & BLOCKED) != 0) return 0;
+        final int s = nextStamp();
+        stamps[from] = s;
+        queue[0] = from;
+        int read = 0, write = 1;
+        while(read < write && write < limit) {
+            final int c = queue[read++];
+            for(int d = 0; d < OFFSETS.length; d++) {
+                final int n = c + OFFSETS[d];
+                if(stamps[n] == s || (cells[n] & BLOCKED) != 0) continue;
+                stamps[n] = s;
+                queue[write++] = n;
+            }
+        }
+        return write;
+    }
+
+    private int nextStamp(){
+        if(++stamp == 0) {
+            java.util.Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+        return stamp;
+    }
+
+    /**
+     * Plays {@code [games]} games under the {@code Autopilot} and reports the
+     * cost of a decision and how well it plays. A game whose last apple can
+     * never be reached is called off after {@code [ticks]} ticks.
+     */
+    public static void main(final String[] args){
+        final int games = args.length > 0? Integer.parseInt(args[0]): 200;
+        final int ticks = args.length > 1? Integer.parseInt(args[1]): 100_000;
+        final Autopilot pilot = new Autopilot();
+        final Engine engine = new Engine(0);
+        long decisions = 0, nanos = 0, levels = 0, scores = 0, stalled = 0;
+        for(int g = 0; g < games; g++) {
+            engine.reset(g);
+            do {
+                final long start = System.nanoTime();
+                pilot.steer(engine);
+                nanos += System.nanoTime() - start;
+                decisions++;
+            } while(engine.tick() && engine.getTick() < ticks);
+            if(engine.getGameStatus().isRunning()) stalled++;
+            levels += engine.getLevel();
+            scores += engine.getScore();
+        }
+        System.out.printf("%d games (%d stalled): %.2fus/decision, mean level %.1f, mean score %.1f%n",
+                games, stalled, nanos / 1000.0 / decisions, levels / (double) games, scores / (double) games);
+    }
+
+}
@@ -0,0 +1,364 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Balance
+ *
+ * <p>A command-line Monte Carlo analysis of the level progression. Sweeps a
+ * grid of {@code Rules}, plays many games under each reference policy at
+ * every grid point, and writes per-level survival curves and score
+ * percentiles to CSV.
+ *
+ * <p>Each grid point is played out in parallel and summarized into
+ * fixed-size histograms, then written and flushed before the next one
+ * starts, so memory stays flat however large the sweep.
+ *
+ * <pre>
+ *   java Balance --snake 6,10,14 --mine-level 4,6,8 --games 100000 --out balance.csv
+ * </pre>
+ * Every {@code Rules} field may be swept ({@code --snake}, {@code --apples},
+ * {@code --apple-increment}, {@code --mines}, {@code --mine-increment},
+ * {@code --mine-level}, {@code --tail-bites}, {@code --score},
+ * {@code --score-increment}, {@code --widening}); fields left out keep their
+ * {@code Rules.DEFAULT} value. {@code --policies}, {@code --games},
+ * {@code --max-ticks}, {@code --seed} and {@code --threads} control the runs.
+ */
+public final class Balance {
+
+    /**
+     * Histogram bounds. Games beyond them are counted in the last bucket.
+     */
+    public static final int MAX_LEVEL;
+    public static final int MAX_APPLES;
+
+    /*
+     * Games handed to a thread at a time.
+     */
+    private static final int CHUNK;
+
+    /*
+     * The sweepable Rules fields, in constructor order.
+     */
+    private static final String[] FIELDS;
+
+    /* init */
+    static {
+        MAX_LEVEL = 256;
+        MAX_APPLES = 1 << 16;
+        CHUNK = 64;
+        FIELDS = new String[]{
+                "snake", "apples", "apple-increment", "mines", "mine-increment",
+                "mine-level", "tail-bites", "score", "score-increment", "widening"
+        };
+    }
+
+    /**
+     * Policy
+     *
+     * <p>The reference bots games are played under.
+     */
+    public enum Policy {
+
+        /**
+         * The {@code Autopilot}.
+         */
+        AUTOPILOT {
+            @Override
+            public SessionHost.Pilot pilot(){
+                return new Autopilot();
+            }
+        },
+
+        /**
+         * A bot that wanders at random, only avoiding immediate death.
+         */
+        RANDOM {
+            @Override
+            public SessionHost.Pilot pilot(){
+                return new Wanderer();
+            }
+            @Override
+            public void start(final SessionHost.Pilot pilot, final long seed){
+                ((Wanderer) pilot).state = seed * 0x9E3779B97F4A7C15L + 1;
+            }
+        };
+
+        /**
+         * Creates a pilot to be reused game after game on one thread.
+         */
+        public abstract SessionHost.Pilot pilot();
+
+        /**
+         * Prepares a pilot for a new game.
+         */
+        public void start(final SessionHost.Pilot pilot, final long seed){ }
+    }
+
+    /*
+     * A bot that mostly keeps going, turning at random and whenever
+     * going on would kill it.
+     */
+    private static final class Wanderer implements SessionHost.Pilot {
+
+        private static final Game.GridPanel.Direction[] DIRECTIONS = Game.GridPanel.Direction.values();
+        private static final int BLOCKED = Engine.WALL | Engine.BODY | Engine.MINE;
+
+        long state;
+
+        @Override
+        public void steer(final Engine engine){
+            if(engine.length() == 0) return;
+            final Game.GridPanel.Direction current = engine.getDirection();
+            final int head = engine.head();
+            if((next() & 3) != 0 && (engine.bits(head + Engine.offset(current)) & BLOCKED) == 0) return;
+            final int start = (int) (next() & 3);
+            for(int i = 0; i < DIRECTIONS.length; i++) {
+                final Game.GridPanel.Direction d = DIRECTIONS[(start + i) & 3];
+                if((engine.bits(head + Engine.offset(d)) & BLOCKED) == 0) {
+                    engine.steer(d);
+                    if(engine.getDirection() == d) return;
+                }
+            }
+        }
+
+        private long next(){
+            state ^= state << 13;
+            state ^= state >>> 7;
+            state ^= state << 17;
+            return state >>> 32;
+        }
+    }
+
+    /*
+     * The outcome of playing one grid point under one policy.
+     */
+    private static final class Tally {
+        final long[] levels = new long[MAX_LEVEL + 1];
+        final long[] apples = new long[MAX_APPLES + 1];
+        final long[] causes = new long[Engine.Cause.values().length];
+        long games;
+        long stalled;
+
+        void add(final Tally other){
+            for(int i = 0; i < levels.length; i++) levels[i] += other.levels[i];
+            for(int i = 0; i < apples.length; i++) apples[i] += other.apples[i];
+            for(int i = 0; i < causes.length; i++) causes[i] += other.causes[i];
+            games += other.games;
+            stalled += other.stalled;
+        }
+
+        int applesAt(final double p){
+            final double target = games * p;
+            long seen = 0;
+            for(int i = 0; i < apples.length; i++) {
+                seen += apples[i];
+                if(seen >= target && seen > 0) return i;
+            }
+            return MAX_APPLES;
+        }
+    }
+
+    private final List<Rules> grid;
+    private final List<Policy> policies;
+    private final long games;
+    private final int maxTicks;
+    private final long seed;
+    private final ExecutorService pool;
+    private final int threads;
+
+    /**
+     * A public constructor for a {@code Balance} run.
+     */
+    public Balance(final List<Rules> grid, final List<Policy> policies, final long games,
+                   final int maxTicks, final long seed, final int threads){
+        this.grid = grid;
+        this.policies = policies;
+        this.games = games;
+        this.maxTicks = maxTicks;
+        this.seed = seed;
+        this.threads = threads;
+        pool = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Plays the whole sweep, writing a summary row per grid point and policy
+     * to one CSV and a row per level reached to the other.
+     */
+    public void run(final Writer summary, final Writer survival) throws IOException {
+        final String config = "snake,apples,apple_increment,mines,mine_increment,mine_level," +
+                "tail_bites,score,score_increment,widening,policy";
+        summary.write(config + ",games,stalled,bonk,boom,chomp,mean_level,mean_score," +
+                "p10_score,p50_score,p90_score,p99_score,max_level\n");
+        survival.write(config + ",level,games_reaching,survival\n");
+        int done = 0;
+        try {
+            for(Rules rules: grid) {
+                for(Policy policy: policies) {
+                    final long start = System.nanoTime();
+                    final Tally t = play(rules, policy);
+                    write(summary, survival, rules, policy, t);
+                    summary.flush();
+                    survival.flush();
+                    System.err.printf("[%d/%d] %s %s: %d games in %.1fs%n",
+                            ++done, grid.size() * policies.size(), rules, policy,
+                            t.games, (System.nanoTime() - start) / 1e9);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /*
+     * Plays every game of one grid point in parallel.
+     */
+    private Tally play(final Rules rules, final Policy policy){
+        final AtomicLong next = new AtomicLong();
+        final List<Callable<Tally>> tasks = new ArrayList<>();
+        for(int i = 0; i < threads; i++) {
+            tasks.add(() -> {
+                final Tally t = new Tally();
+                final Engine engine = new Engine(0, rules);
+                final SessionHost.Pilot pilot = policy.pilot();
+                for(long g = next.getAndAdd(CHUNK); g < games; g = next.getAndAdd(CHUNK)) {
+                    for(long end = Math.min(games, g + CHUNK); g < end; g++) {
+                        engine.reset(seed + g);
+                        policy.start(pilot, seed + g);
+                        do pilot.steer(engine);
+                        while(engine.tick() && engine.getTick() < maxTicks);
+                        t.games++;
+                        if(engine.getCause() == null) t.stalled++;
+                        else t.causes[engine.getCause().ordinal()]++;
+                        t.levels[Math.min(engine.getLevel(), MAX_LEVEL)]++;
+                        final int eaten = (engine.getScore() - rules.score) / Math.max(1, rules.scoreIncrement);
+                        t.apples[Math.min(Math.max(eaten, 0), MAX_APPLES)]++;
+                    }
+                }
+                return t;
+            });
+        }
+        final Tally total = new Tally();
+        try {
+            for(Future<Tally> f: pool.invokeAll(tasks)) total.add(f.get());
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch(ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return total;
+    }
+
+    private static void write(final Writer summary, final Writer survival, final Rules rules,
+                              final Policy policy, final Tally t) throws IOException {
+        final String config = String.format("%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%s",
+                rules.snakeSize, rules.appleQuantity, rules.appleIncrement, rules.mineQuantity,
+                rules.mineIncrement, rules.mineIntroductionLevel, rules.tailBiteQuantity,
+                rules.score, rules.scoreIncrement, rules.spawnWidening, policy.name().toLowerCase());
+        double levelSum = 0, appleSum = 0;
+        int maxLevel = 0;
+        for(int i = 0; i <= MAX_LEVEL; i++) {
+            levelSum += (double) i * t.levels[i];
+            if(t.levels[i] > 0) maxLevel = i;
+        }
+        for(int i = 0; i <= MAX_APPLES; i++) appleSum += (double) i * t.apples[i];
+        final double n = Math.max(1, t.games);
+        summary.write(String.format("%s,%d,%d,%d,%d,%d,%.3f,%.1f,%d,%d,%d,%d,%d%n",
+                config, t.games, t.stalled,
+                t.causes[Engine.Cause.BONK.ordinal()],
+                t.causes[Engine.Cause.BOOM.ordinal()],
+                t.causes[Engine.Cause.CHOMP.ordinal()],
+                levelSum / n, rules.score + rules.scoreIncrement * appleSum / n,
+                rules.score + rules.scoreIncrement * t.applesAt(0.10),
+                rules.score + rules.scoreIncrement * t.applesAt(0.50),
+                rules.score + rules.scoreIncrement * t.applesAt(0.90),
+                rules.score + rules.scoreIncrement * t.applesAt(0.99),
+                maxLevel));
+        long reaching = t.games;
+        for(int level = 1; level <= maxLevel; level++) {
+            reaching -= t.levels[level - 1];
+            survival.write(String.format("%s,%d,%d,%.6f%n", config, level, reaching, reaching / n));
+        }
+    }
+
+    /**
+     * See the class documentation.
+     */
+    public static void main(final String[] args) throws IOException {
+        final Map<String, String> options = new LinkedHashMap<>();
+        for(int i = 0; i + 1 < args.length; i += 2) {
+            if(!args[i].startsWith("--")) throw new IllegalArgumentException("Unexpected: " + args[i]);
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        for(String key: options.keySet()) {
+            if(!List.of(FIELDS).contains(key) &&
+                    !List.of("policies", "games", "max-ticks", "seed", "threads", "out").contains(key)) {
+                throw new IllegalArgumentException("Unknown option: --" + key);
+            }
+        }
+        final Rules d = Rules.DEFAULT;
+        final int[][] axes = {
+                axis(options, FIELDS[0], d.snakeSize), axis(options, FIELDS[1], d.appleQuantity),
+                axis(options, FIELDS[2], d.appleIncrement), axis(options, FIELDS[3], d.mineQuantity),
+                axis(options, FIELDS[4], d.mineIncrement), axis(options, FIELDS[5], d.mineIntroductionLevel),
+                axis(options, FIELDS[6], d.tailBiteQuantity), axis(options, FIELDS[7], d.score),
+                axis(options, FIELDS[8], d.scoreIncrement), axis(options, FIELDS[9], d.spawnWidening)
+        };
+        final List<Rules> grid = new ArrayList<>();
+        final int[] at = new int[axes.length];
+        while(true) {
+            grid.add(new Rules(axes[0][at[0]], axes[1][at[1]], axes[2][at[2]], axes[3][at[3]],
+                    axes[4][at[4]], axes[5][at[5]], axes[6][at[6]], axes[7][at[7]],
+                    axes[8][at[8]], axes[9][at[9]]));
+            int i = axes.length - 1;
+            while(i >= 0 && ++at[i] == axes[i].length) at[i--] = 0;
+            if(i < 0) break;
+        }
+        final List<Policy> policies = new ArrayList<>();
+        for(String p: options.getOrDefault("policies", "autopilot,random").split(",")) {
+            policies.add(Policy.valueOf(p.trim().toUpperCase()));
+        }
+        final Path out = Paths.get(options.getOrDefault("out", "balance.csv"));
+        final String name = out.getFileName().toString();
+        final Path curves = out.resolveSibling(
+                (name.endsWith(".csv")? name.substring(0, name.length() - 4): name) + "-survival.csv");
+        final Balance balance = new Balance(grid, policies,
+                Long.parseLong(options.getOrDefault("games", "10000")),
+                Integer.parseInt(options.getOrDefault("max-ticks", "50000")),
+                Long.parseLong(options.getOrDefault("seed", "0")),
+                Integer.parseInt(options.getOrDefault("threads",
+                        String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        try(BufferedWriter summary = Files.newBufferedWriter(out, StandardCharsets.UTF_8);
+            BufferedWriter survival = Files.newBufferedWriter(curves, StandardCharsets.UTF_8)) {
+            balance.run(summary, survival);
+        }
+    }
+
+    /*
+     * Parses a comma-separated sweep axis.
+     */
+    private static int[] axis(final Map<String, String> options, final String field, final int fallback){
+        final String value = options.get(field);
+        if(value == null) return new int[]{fallback};
+        final String[] parts = value.split(",");
+        final int[] values = new int[parts.length];
+        for(int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+
+}
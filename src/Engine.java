@@ -0,0 +1,752 @@
+import java.util.Arrays;
+
+/**
+ * Engine
+ *
+ * <p>A headless re-creation of the rules played out by {@code Game.GridPanel}.
+ * The board is a padded grid of cells held in a single {@code byte} array, the
+ * snake is a ring buffer of cell indices and the random number generator is
+ * kept as a plain {@code long}, so an {@code Engine} never touches Swing and
+ * its whole state is plain data.
+ *
+ * <p>One call to {@link #tick()} is one call to {@code GridPanel.update()}
+ * followed by the {@code paintSnake} that the repaint would have performed.
+ */
+public final class Engine {
+
+    /**
+     * Game constants. {@code GridPanel} reads its rules from here, and they
+     * make up {@code Rules.DEFAULT}.
+     */
+    public static final int SQUARE_SIZE;
+    public static final int DEFAULT_SCORE;
+    public static final int DEFAULT_APPLE_QUANTITY;
+    public static final int DEFAULT_MINE_QUANTITY;
+    public static final int DEFAULT_TAIL_BITE_QUANTITY;
+    public static final int APPLE_INCREMENT;
+    public static final int MINE_INCREMENT;
+    public static final int SCORE_INCREMENT;
+    public static final int MINE_INTRODUCTION_LEVEL;
+    public static final int DEFAULT_SNAKE_SIZE;
+    public static final int DEFAULT_SPAWN_WIDENING;
+    public static final int HORIZONTAL_BOUND;
+    public static final int VERTICAL_BOUND;
+
+    /**
+     * Board layout. Cells are indexed row-major over a grid that is padded by
+     * {@code PAD} wall cells on every side, so a head that steps off the board
+     * still lands on a valid index.
+     */
+    public static final int COLUMNS;
+    public static final int ROWS;
+    public static final int PAD;
+    public static final int STRIDE;
+    public static final int CELLS;
+
+    /**
+     * Cell bits. The low nibble counts the snake segments on a cell (a snake
+     * may overlap itself while it has tail-bites left).
+     */
+    public static final int BODY;
+    public static final int APPLE;
+    public static final int MINE;
+    public static final int DETONATED;
+    public static final int WALL;
+
+    /*
+     * Thirds of the horizontal and vertical boundaries respectively.
+     */
+    private static final int X_THIRD;
+    private static final int Y_THIRD;
+
+    /*
+     * java.util.Random's LCG parameters.
+     */
+    private static final long MULTIPLIER;
+    private static final long ADDEND;
+    private static final long MASK;
+
+    /*
+     * The all-walls board that every Engine starts from.
+     */
+    private static final byte[] EMPTY_BOARD;
+
+    /* init */
+    static {
+        SQUARE_SIZE = 8;
+        DEFAULT_APPLE_QUANTITY = 1;
+        DEFAULT_MINE_QUANTITY = 1;
+        DEFAULT_TAIL_BITE_QUANTITY = 5;
+        DEFAULT_SCORE = 80;
+        APPLE_INCREMENT = 2;
+        MINE_INCREMENT = 1;
+        SCORE_INCREMENT = 8;
+        MINE_INTRODUCTION_LEVEL = 6;
+        DEFAULT_SNAKE_SIZE = 10;
+        DEFAULT_SPAWN_WIDENING = 2;
+        HORIZONTAL_BOUND = 576;
+        VERTICAL_BOUND = 528;
+        COLUMNS = HORIZONTAL_BOUND / SQUARE_SIZE + 1;
+        ROWS = VERTICAL_BOUND / SQUARE_SIZE + 1;
+        PAD = 2;
+        STRIDE = COLUMNS + (PAD << 1);
+        CELLS = STRIDE * (ROWS + (PAD << 1));
+        BODY = 0x0F;
+        APPLE = 0x10;
+        MINE = 0x20;
+        DETONATED = 0x40;
+        WALL = 0x80;
+        X_THIRD = 24;
+        Y_THIRD = 22;
+        MULTIPLIER = 0x5DEECE66DL;
+        ADDEND = 0xBL;
+        MASK = (1L << 48) - 1;
+        EMPTY_BOARD = new byte[CELLS];
+        Arrays.fill(EMPTY_BOARD, (byte) WALL);
+        for(int y = 0; y < ROWS; y++) {
+            Arrays.fill(EMPTY_BOARD, cell(0, y), cell(COLUMNS, y), (byte) 0);
+        }
+    }
+
+    /**
+     * Cause
+     *
+     * <p>Why a game ended, titled the way {@code GridPanel}'s death dialog
+     * titles it.
+     */
+    public enum Cause {
+        BONK("Bonk!"), BOOM("Boom!"), CHOMP("Chomp!");
+
+        private final String title;
+
+        Cause(final String title){
+            this.title = title;
+        }
+
+        /**
+         * Exposes the death dialog title for this {@code Cause}.
+         *
+         * @return the title
+         */
+        public String title(){
+            return title;
+        }
+    }
+
+    /**
+     * Observer
+     *
+     * <p>Receives every state change an {@code Engine} makes, in the order it
+     * makes them. All methods are invoked on the ticking thread.
+     */
+    public interface Observer {
+        default void headAdded(int cell) { }
+        default void tailRemoved(int cell) { }
+        default void appleSpawned(int cell) { }
+        default void appleEaten(int cell) { }
+        default void mineSpawned(int cell) { }
+        default void mineCleared(int cell) { }
+        default void mineDetonated(int cell) { }
+        default void tailBitten(int remaining) { }
+        default void levelStarted(int level) { }
+        default void died(Cause cause) { }
+    }
+
+    /*
+     * An Observer that ignores everything.
+     */
+    private static final Observer NULL_OBSERVER = new Observer() { };
+
+    /*
+     * Two Observers notified one after the other, so that one Engine can be
+     * followed by several.
+     */
+    private static final class Chain implements Observer {
+
+        private final Observer first;
+        private final Observer second;
+
+        Chain(final Observer first, final Observer second){
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void headAdded(final int cell){
+            first.headAdded(cell);
+            second.headAdded(cell);
+        }
+        @Override
+        public void tailRemoved(final int cell){
+            first.tailRemoved(cell);
+            second.tailRemoved(cell);
+        }
+        @Override
+        public void appleSpawned(final int cell){
+            first.appleSpawned(cell);
+            second.appleSpawned(cell);
+        }
+        @Override
+        public void appleEaten(final int cell){
+            first.appleEaten(cell);
+            second.appleEaten(cell);
+        }
+        @Override
+        public void mineSpawned(final int cell){
+            first.mineSpawned(cell);
+            second.mineSpawned(cell);
+        }
+        @Override
+        public void mineCleared(final int cell){
+            first.mineCleared(cell);
+            second.mineCleared(cell);
+        }
+        @Override
+        public void mineDetonated(final int cell){
+            first.mineDetonated(cell);
+            second.mineDetonated(cell);
+        }
+        @Override
+        public void tailBitten(final int remaining){
+            first.tailBitten(remaining);
+            second.tailBitten(remaining);
+        }
+        @Override
+        public void levelStarted(final int level){
+            first.levelStarted(level);
+            second.levelStarted(level);
+        }
+        @Override
+        public void died(final Cause cause){
+            first.died(cause);
+            second.died(cause);
+        }
+    }
+
+    /*
+     * The progression constants this Engine plays by.
+     */
+    private final Rules rules;
+
+    /*
+     * The board. See the cell bits above.
+     */
+    private final byte[] cells;
+
+    /*
+     * The snake, as a ring buffer of cells running from tail to head.
+     */
+    private int[] body;
+    private int tail;
+    private int length;
+
+    /*
+     * The cells of the apples and mines currently on the board.
+     */
+    private int[] apples;
+    private int appleCount;
+    private int[] mines;
+    private int mineCount;
+
+    /*
+     * Game state, mirroring the fields of GridPanel.
+     */
+    private Game.GridPanel.GameStatus gameStatus;
+    private Game.GridPanel.Direction currentDirection;
+    private int currentLocation;
+    private int legalSnakeSize;
+    private int legalNumberOfApples;
+    private int legalNumberOfMines;
+    private int level;
+    private int score;
+    private int tailBites;
+    private Cause cause;
+    private int tick;
+
+    /*
+     * The state of the random number generator.
+     */
+    private long seed;
+
+    /*
+     * The Observer to notify of state changes.
+     */
+    private Observer observer;
+
+    /**
+     * A public constructor for an {@code Engine} that plays by
+     * {@code Rules.DEFAULT}.
+     *
+     * @param seed the seed for apple and mine placement
+     */
+    public Engine(final long seed){
+        this(seed, Rules.DEFAULT);
+    }
+
+    /**
+     * A public constructor for an {@code Engine}.
+     *
+     * @param seed the seed for apple and mine placement
+     * @param rules the progression constants to play by
+     */
+    public Engine(final long seed, final Rules rules){
+        this.rules = rules;
+        cells = new byte[CELLS];
+        body = new int[64];
+        apples = new int[16];
+        mines = new int[16];
+        observer = NULL_OBSERVER;
+        reset(seed);
+    }
+
+    /**
+     * Resets the {@code Engine} to the start of a new game.
+     *
+     * @param seed the seed for apple and mine placement
+     */
+    public void reset(final long seed){
+        clear(cells);
+        tail = 0;
+        length = 0;
+        appleCount = 0;
+        mineCount = 0;
+        gameStatus = Game.GridPanel.GameStatus.RUNNING;
+        currentDirection = Game.GridPanel.Direction.RIGHT;
+        currentLocation = cell(1, 1);
+        legalSnakeSize = rules.snakeSize;
+        legalNumberOfApples = rules.appleQuantity;
+        legalNumberOfMines = rules.mineQuantity;
+        tailBites = rules.tailBiteQuantity;
+        level = 0;
+        score = rules.score;
+        cause = null;
+        tick = 0;
+        this.seed = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    /**
+     * Makes this {@code Engine} a copy of another, so that the copy can be
+     * played forward without touching the original. The copy keeps its own
+     * {@code Observer}, which is not notified. Nothing is allocated unless
+     * the other {@code Engine} has outgrown this one's buffers.
+     *
+     * @param other an {@code Engine} that plays by the same {@code Rules}
+     */
+    public void copyFrom(final Engine other){
+        if(other.rules != rules) throw new IllegalArgumentException("Engines play by different Rules.");
+        System.arraycopy(other.cells, 0, cells, 0, CELLS);
+        if(body.length < other.body.length) body = new int[other.body.length];
+        final int mask = other.body.length - 1;
+        for(int i = 0; i < other.length; i++) body[i] = other.body[(other.tail + i) & mask];
+        tail = 0;
+        length = other.length;
+        if(apples.length < other.appleCount) apples = new int[other.apples.length];
+        System.arraycopy(other.apples, 0, apples, 0, other.appleCount);
+        appleCount = other.appleCount;
+        if(mines.length < other.mineCount) mines = new int[other.mines.length];
+        System.arraycopy(other.mines, 0, mines, 0, other.mineCount);
+        mineCount = other.mineCount;
+        gameStatus = other.gameStatus;
+        currentDirection = other.currentDirection;
+        currentLocation = other.currentLocation;
+        legalSnakeSize = other.legalSnakeSize;
+        legalNumberOfApples = other.legalNumberOfApples;
+        legalNumberOfMines = other.legalNumberOfMines;
+        level = other.level;
+        score = other.score;
+        tailBites = other.tailBites;
+        cause = other.cause;
+        tick = other.tick;
+        seed = other.seed;
+    }
+
+    /**
+     * Replaces the state of the random number generator without otherwise
+     * changing the game. A copy made to look ahead is reseeded so that it
+     * samples apple and mine spawns rather than knowing the real ones.
+     *
+     * @param seed the new seed
+     */
+    public void reseed(final long seed){
+        this.seed = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    /**
+     * Sets the {@code Observer} to notify of state changes.
+     *
+     * @param observer the observer, or null for none
+     */
+    public void setObserver(final Observer observer){
+        this.observer = observer == null? NULL_OBSERVER: observer;
+    }
+
+    /**
+     * Adds an {@code Observer} to notify of state changes, after the ones
+     * already set.
+     *
+     * @param observer the observer
+     */
+    public void addObserver(final Observer observer){
+        this.observer = this.observer == NULL_OBSERVER? observer: new Chain(this.observer, observer);
+    }
+
+    /**
+     * Places the snake and the first level's apples and mines without
+     * advancing the game, so that a new game can be observed before its
+     * first move. The first tick would place them the same way, and does
+     * nothing more of the kind once they are placed.
+     */
+    public void populate(){
+        if(gameStatus.isRunning()) populatePixelElements();
+    }
+
+    /**
+     * Advances the game by one tick if it is running.
+     *
+     * @return whether or not the game is still running
+     */
+    public boolean tick(){
+        if(!gameStatus.isRunning()) return false;
+        tick++;
+        populatePixelElements();
+        if(length > 2) {
+            final int head = currentLocation;
+            final int bits = cells[head];
+            final boolean eatingMine = level >= rules.mineIntroductionLevel && (bits & MINE) != 0;
+            final boolean eatingSelf = tailBites <= 0;
+            if((bits & WALL) != 0 || eatingMine || eatingSelf) {
+                if(eatingMine) detonate(head);
+                cause = eatingMine? Cause.BOOM: eatingSelf? Cause.CHOMP: Cause.BONK;
+                gameStatus = Game.GridPanel.GameStatus.DONE;
+                observer.died(cause);
+                return false;
+            } else if((bits & APPLE) != 0) {
+                eatApple(head);
+                legalSnakeSize++;
+                score += rules.scoreIncrement;
+            } else if((bits & BODY) > 1) {
+                observer.tailBitten(--tailBites);
+            }
+        }
+        moveSnake();
+        return true;
+    }
+
+    /**
+     * Turns the snake, unless asked to reverse onto itself.
+     *
+     * @param direction the requested direction
+     */
+    public void steer(final Game.GridPanel.Direction direction){
+        if(direction.isRight() && currentDirection.isLeft()) return;
+        if(direction.isLeft() && currentDirection.isRight()) return;
+        if(direction.isUp() && currentDirection.isDown()) return;
+        if(direction.isDown() && currentDirection.isUp()) return;
+        currentDirection = direction;
+    }
+
+    /**
+     * Toggles the {@code GameStatus} between PAUSED and RUNNING.
+     */
+    public void pause(){
+        if(gameStatus != Game.GridPanel.GameStatus.DONE) gameStatus = gameStatus.pause();
+    }
+
+    /*
+     * See GridPanel.populatePixelElements(). Mines may be placed atop the
+     * snake but never atop apples or other mines. A level whose increments
+     * have outgrown its spawn window gets only as many as the window holds,
+     * rather than retrying for a free cell that does not exist.
+     */
+    private void populatePixelElements(){
+        if(length == 0) addHead(currentLocation);
+        if(appleCount == 0) {
+            tailBites = rules.tailBiteQuantity;
+            level++;
+            observer.levelStarted(level);
+            final int window = spawnWindow(rules.spawnWidening, level);
+            for(int i = 0, n = Math.min(legalNumberOfApples, window); i < n; i++) {
+                int c = spawn(level);
+                while((cells[c] & APPLE) != 0) c = spawn(level);
+                cells[c] |= APPLE;
+                apples = push(apples, appleCount++, c);
+                observer.appleSpawned(c);
+            }
+            legalNumberOfApples += rules.appleIncrement;
+            if(level >= rules.mineIntroductionLevel) {
+                for(int i = 0; i < mineCount; i++) {
+                    final int c = mines[i];
+                    cells[c] &= ~(MINE | DETONATED);
+                    observer.mineCleared(c);
+                }
+                mineCount = 0;
+                for(int i = 0, n = Math.min(legalNumberOfMines, window - appleCount); i < n; i++) {
+                    int c = spawn(level);
+                    while((cells[c] & (APPLE | MINE)) != 0) c = spawn(level);
+                    cells[c] |= MINE;
+                    mines = push(mines, mineCount++, c);
+                    observer.mineSpawned(c);
+                }
+                legalNumberOfMines += rules.mineIncrement;
+            }
+        }
+    }
+
+    /*
+     * See GridPanel.paintSnake(Graphics). Drops the tail segment if the
+     * snake is over its legal size, then grows a new head.
+     */
+    private void moveSnake(){
+        if(length > legalSnakeSize) {
+            final int c = body[tail];
+            cells[c]--;
+            tail = (tail + 1) & (body.length - 1);
+            length--;
+            observer.tailRemoved(c);
+        }
+        addHead(currentLocation = currentLocation + offset(currentDirection));
+    }
+
+    /*
+     * Appends a head segment, growing the ring buffer if it is full.
+     */
+    private void addHead(final int c){
+        if(length == body.length) {
+            final int[] grown = new int[body.length << 1];
+            for(int i = 0; i < length; i++) grown[i] = body[(tail + i) & (body.length - 1)];
+            body = grown;
+            tail = 0;
+        }
+        body[(tail + length++) & (body.length - 1)] = c;
+        cells[c]++;
+        observer.headAdded(c);
+    }
+
+    /*
+     * Removes the apple on the given cell.
+     */
+    private void eatApple(final int c){
+        cells[c] &= ~APPLE;
+        for(int i = 0; i < appleCount; i++) {
+            if(apples[i] == c) {
+                apples[i] = apples[--appleCount];
+                break;
+            }
+        }
+        observer.appleEaten(c);
+    }
+
+    /*
+     * Marks the mine on the given cell for detonation.
+     */
+    private void detonate(final int c){
+        cells[c] |= DETONATED;
+        observer.mineDetonated(c);
+    }
+
+    /*
+     * See GridPanel.spawn(int). The interval of random generation widens with each
+     * level so that early apples sit near the center of the board. It stops
+     * widening once it spans the whole board.
+     */
+    private int spawn(final int level){
+        final int w = rules.spawnWidening;
+        final boolean xOpen = w > 0 && level >= X_THIRD / w;
+        final boolean yOpen = w > 0 && level >= Y_THIRD / w;
+        final int lowerXBound = xOpen? 0: X_THIRD - w * level;
+        final int lowerYBound = yOpen? 0: Y_THIRD - w * level;
+        final int upperXBound = xOpen? X_THIRD * 3: X_THIRD + 2 * w * level;
+        final int upperYBound = yOpen? Y_THIRD * 3: Y_THIRD + 2 * w * level;
+        final int x = lowerXBound + nextInt(upperXBound);
+        return cell(x, lowerYBound + nextInt(upperYBound));
+    }
+
+    /*
+     * The number of cells in the spawn window of a level.
+     */
+    static int spawnWindow(final int spawnWidening, final int level){
+        final int w = spawnWidening;
+        final int columns = w > 0 && level >= X_THIRD / w? X_THIRD * 3: X_THIRD + 2 * w * level;
+        final int rows = w > 0 && level >= Y_THIRD / w? Y_THIRD * 3: Y_THIRD + 2 * w * level;
+        return columns * rows;
+    }
+
+    /*
+     * java.util.Random.nextInt(int), over the seed field.
+     */
+    private int nextInt(final int bound){
+        int r = next31();
+        final int m = bound - 1;
+        if((bound & m) == 0) return (int) ((bound * (long) r) >> 31);
+        for(int u = r; u - (r = u % bound) + m < 0; u = next31());
+        return r;
+    }
+
+    private int next31(){
+        seed = (seed * MULTIPLIER + ADDEND) & MASK;
+        return (int) (seed >>> 17);
+    }
+
+    /*
+     * Appends a value to a growable array.
+     */
+    private static int[] push(int[] a, final int i, final int v){
+        if(i == a.length) a = Arrays.copyOf(a, a.length << 1);
+        a[i] = v;
+        return a;
+    }
+
+    /**
+     * Resets a board to walls around empty cells.
+     *
+     * @param cells a board of {@code CELLS} cells
+     */
+    public static void clear(final byte[] cells){
+        System.arraycopy(EMPTY_BOARD, 0, cells, 0, CELLS);
+    }
+
+    /**
+     * Converts grid coordinates to a cell index.
+     *
+     * @param x the column, which may lie up to {@code PAD} cells off the board
+     * @param y the row, which may lie up to {@code PAD} cells off the board
+     * @return the cell index
+     */
+    public static int cell(final int x, final int y){
+        return (y + PAD) * STRIDE + x + PAD;
+    }
+
+    /**
+     * Exposes the column of a cell.
+     *
+     * @param cell the cell index
+     * @return the column
+     */
+    public static int column(final int cell){
+        return cell % STRIDE - PAD;
+    }
+
+    /**
+     * Exposes the row of a cell.
+     *
+     * @param cell the cell index
+     * @return the row
+     */
+    public static int row(final int cell){
+        return cell / STRIDE - PAD;
+    }
+
+    /**
+     * Exposes the change in cell index of one step in a {@code Direction}.
+     *
+     * @param direction the direction
+     * @return the cell offset
+     */
+    public static int offset(final Game.GridPanel.Direction direction){
+        return direction.isUp()? -STRIDE: direction.isDown()? STRIDE: direction.isLeft()? -1: 1;
+    }
+
+    /**
+     * Exposes the bits of a cell.
+     *
+     * @param cell the cell index
+     * @return the cell bits
+     */
+    public int bits(final int cell){
+        return cells[cell] & 0xFF;
+    }
+
+    /*
+     * Exposes the board itself, for readers in this package that scan it
+     * cell by cell. It must not be written to.
+     */
+    byte[] board(){
+        return cells;
+    }
+
+    /**
+     * Exposes the number of segments in the snake.
+     *
+     * @return the snake length
+     */
+    public int length(){
+        return length;
+    }
+
+    /**
+     * Exposes a segment of the snake, counting from the tail.
+     *
+     * @param i the segment index, {@code 0} being the tail
+     * @return the cell of the segment
+     */
+    public int segment(final int i){
+        return body[(tail + i) & (body.length - 1)];
+    }
+
+    /**
+     * Exposes the cell of the head of the snake.
+     *
+     * @return the head cell
+     */
+    public int head(){
+        return currentLocation;
+    }
+
+    public int appleCount(){
+        return appleCount;
+    }
+
+    public int apple(final int i){
+        return apples[i];
+    }
+
+    public int mineCount(){
+        return mineCount;
+    }
+
+    public int mine(final int i){
+        return mines[i];
+    }
+
+    public Game.GridPanel.GameStatus getGameStatus(){
+        return gameStatus;
+    }
+
+    public Game.GridPanel.Direction getDirection(){
+        return currentDirection;
+    }
+
+    public int getLegalSnakeSize(){
+        return legalSnakeSize;
+    }
+
+    public int getLevel(){
+        return level;
+    }
+
+    public int getScore(){
+        return score;
+    }
+
+    public int getTailBites(){
+        return tailBites;
+    }
+
+    public int getTick(){
+        return tick;
+    }
+
+    public Rules getRules(){
+        return rules;
+    }
+
+    /**
+     * Exposes why the game ended.
+     *
+     * @return the {@code Cause}, or null while the game is not DONE
+     */
+    public Cause getCause(){
+        return cause;
+    }
+
+}
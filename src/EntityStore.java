@@ -0,0 +1,754 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Entity Store
+ *
+ * <p>The apples, mines and snake segments of a {@code GridPanel}, held as
+ * parallel primitive arrays rather than as an object per entity. Apples and
+ * mines are packed into dense arrays of cell, kind, flags and expiry, so
+ * painting them is a linear walk over a few contiguous arrays; a slot index
+ * by kind and {@code Engine} cell finds the entity under the head with one
+ * array read, and removal swaps the last entity into the hole. The snake is a
+ * ring buffer of cells from tail to head, as in {@code Engine}, with a count
+ * of segments per cell so that a tail-bite is one array read as well. Code
+ * that walks the whole snake reads the ring's arrays directly, as at most
+ * two contiguous spans.
+ *
+ * <p>Positions are {@code Engine} cells, with the pixel coordinates of each
+ * entity alongside in arrays of their own so that painting reads nothing but
+ * what it paints. No entity holds a {@code Point}, and nothing is allocated
+ * as the snake moves or apples are eaten.
+ */
+public final class EntityStore {
+
+    /**
+     * Kinds of entity.
+     */
+    public static final int APPLE;
+    public static final int MINE;
+
+    /**
+     * The number of kinds.
+     */
+    public static final int KINDS;
+
+    /**
+     * Flags: a {@code DETONATED} mine is no longer armed, and is painted as
+     * a blast until its expiry.
+     */
+    public static final int DETONATED;
+
+    /*
+     * The top-left pixel of each cell.
+     */
+    private static final int[] X_OF;
+    private static final int[] Y_OF;
+
+    /* init */
+    static {
+        APPLE = 0;
+        MINE = 1;
+        KINDS = 2;
+        DETONATED = 1;
+        X_OF = new int[Engine.CELLS];
+        Y_OF = new int[Engine.CELLS];
+        for(int c = 0; c < Engine.CELLS; c++) {
+            X_OF[c] = Engine.column(c) * Engine.SQUARE_SIZE;
+            Y_OF[c] = Engine.row(c) * Engine.SQUARE_SIZE;
+        }
+    }
+
+    /*
+     * The apples and mines, packed: entity i is on cells[i], at pixel
+     * (xs[i], ys[i]), of kind kinds[i], with flags[i], and if detonated stops
+     * being painted on update expiries[i].
+     */
+    private int[] cells;
+    private int[] xs;
+    private int[] ys;
+    private byte[] kinds;
+    private byte[] flags;
+    private int[] expiries;
+    private int size;
+
+    /*
+     * One more than the index of the entity of a kind on a cell, at
+     * slots[kind * Engine.CELLS + cell], or 0 for none.
+     */
+    private final int[] slots;
+
+    /*
+     * The number of entities of each kind, and of detonated entities.
+     */
+    private final int[] counts;
+    private int detonated;
+
+    /*
+     * The snake, as a ring buffer of cells from tail to head with their
+     * pixels alongside, and the number of segments on each cell.
+     */
+    private int[] body;
+    private int[] bodyXs;
+    private int[] bodyYs;
+    private int tail;
+    private int length;
+    private final int[] occupancy;
+
+    /**
+     * A public constructor for an empty {@code EntityStore}.
+     */
+    public EntityStore(){
+        cells = new int[64];
+        xs = new int[64];
+        ys = new int[64];
+        kinds = new byte[64];
+        flags = new byte[64];
+        expiries = new int[64];
+        slots = new int[KINDS * Engine.CELLS];
+        counts = new int[KINDS];
+        body = new int[64];
+        bodyXs = new int[64];
+        bodyYs = new int[64];
+        occupancy = new int[Engine.CELLS];
+    }
+
+    /**
+     * Adds an entity, unless one of the same kind is already on the cell.
+     *
+     * @param kind the kind
+     * @param cell the cell
+     * @return whether or not it was added
+     */
+    public boolean add(final int kind, final int cell){
+        final int s = kind * Engine.CELLS + cell;
+        if(slots[s] != 0) return false;
+        if(size == cells.length) {
+            final int grown = size << 1;
+            cells = Arrays.copyOf(cells, grown);
+            xs = Arrays.copyOf(xs, grown);
+            ys = Arrays.copyOf(ys, grown);
+            kinds = Arrays.copyOf(kinds, grown);
+            flags = Arrays.copyOf(flags, grown);
+            expiries = Arrays.copyOf(expiries, grown);
+        }
+        cells[size] = cell;
+        xs[size] = X_OF[cell];
+        ys[size] = Y_OF[cell];
+        kinds[size] = (byte) kind;
+        flags[size] = 0;
+        expiries[size] = 0;
+        slots[s] = ++size;
+        counts[kind]++;
+        return true;
+    }
+
+    /**
+     * Removes the entity of a kind on a cell, if there is one.
+     *
+     * @param kind the kind
+     * @param cell the cell
+     * @return whether or not there was one
+     */
+    public boolean remove(final int kind, final int cell){
+        final int slot = slots[kind * Engine.CELLS + cell];
+        if(slot == 0) return false;
+        removeAt(slot - 1);
+        return true;
+    }
+
+    /*
+     * Removes entity i, moving the last entity into its place.
+     */
+    private void removeAt(final int i){
+        final int kind = kinds[i];
+        slots[kind * Engine.CELLS + cells[i]] = 0;
+        counts[kind]--;
+        detonated -= flags[i] & DETONATED;
+        final int last = --size;
+        if(i == last) return;
+        cells[i] = cells[last];
+        xs[i] = xs[last];
+        ys[i] = ys[last];
+        kinds[i] = kinds[last];
+        flags[i] = flags[last];
+        expiries[i] = expiries[last];
+        slots[kinds[i] * Engine.CELLS + cells[i]] = i + 1;
+    }
+
+    /**
+     * Whether or not there is an entity of a kind on a cell.
+     *
+     * @param kind the kind
+     * @param cell the cell
+     * @return whether or not there is one
+     */
+    public boolean contains(final int kind, final int cell){
+        return slots[kind * Engine.CELLS + cell] != 0;
+    }
+
+    /**
+     * Whether or not there is an entity of any kind on a cell.
+     *
+     * @param cell the cell
+     * @return whether or not there is one
+     */
+    public boolean occupied(final int cell){
+        return (slots[APPLE * Engine.CELLS + cell] | slots[MINE * Engine.CELLS + cell]) != 0;
+    }
+
+    /**
+     * Detonates the armed mine on a cell, if there is one.
+     *
+     * @param cell the cell
+     * @param expiry the update on which its blast stops being painted
+     * @return whether or not there was an armed mine
+     */
+    public boolean detonate(final int cell, final int expiry){
+        final int slot = slots[MINE * Engine.CELLS + cell];
+        if(slot == 0 || (flags[slot - 1] & DETONATED) != 0) return false;
+        flags[slot - 1] |= DETONATED;
+        expiries[slot - 1] = expiry;
+        detonated++;
+        return true;
+    }
+
+    /**
+     * Removes the detonated mines whose blasts have run out by an update.
+     *
+     * @param tick the update
+     */
+    public void expire(final int tick){
+        if(detonated == 0) return;
+        for(int i = size - 1; i >= 0; i--) {
+            if((flags[i] & DETONATED) != 0 && tick >= expiries[i]) removeAt(i);
+        }
+    }
+
+    /**
+     * Removes every entity of a kind that has not been detonated. Blasts
+     * run their course.
+     *
+     * @param kind the kind
+     */
+    public void clear(final int kind){
+        for(int i = size - 1; i >= 0; i--) {
+            if(kinds[i] == kind && (flags[i] & DETONATED) == 0) removeAt(i);
+        }
+    }
+
+    /**
+     * Exposes the number of apples and mines.
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Exposes the number of entities of a kind, detonated or not.
+     *
+     * @param kind the kind
+     * @return the number of entities
+     */
+    public int count(final int kind){
+        return counts[kind];
+    }
+
+    /**
+     * Exposes the number of detonated mines.
+     */
+    public int detonated(){
+        return detonated;
+    }
+
+    /**
+     * Exposes the cell of an entity.
+     *
+     * @param i the index, below {@link #size()}
+     * @return the cell
+     */
+    public int cell(final int i){
+        return cells[i];
+    }
+
+    /**
+     * Exposes the left pixel of an entity.
+     *
+     * @param i the index, below {@link #size()}
+     * @return the horizontal coordinate
+     */
+    public int x(final int i){
+        return xs[i];
+    }
+
+    /**
+     * Exposes the top pixel of an entity.
+     *
+     * @param i the index, below {@link #size()}
+     * @return the vertical coordinate
+     */
+    public int y(final int i){
+        return ys[i];
+    }
+
+    /**
+     * Exposes the kind of an entity.
+     *
+     * @param i the index, below {@link #size()}
+     * @return the kind
+     */
+    public int kind(final int i){
+        return kinds[i];
+    }
+
+    /**
+     * Exposes the flags of an entity.
+     *
+     * @param i the index, below {@link #size()}
+     * @return the flags
+     */
+    public int flags(final int i){
+        return flags[i];
+    }
+
+    /**
+     * Grows the snake a new head.
+     *
+     * @param cell the cell of the head
+     */
+    public void push(final int cell){
+        if(length == body.length) {
+            body = unwrap(body);
+            bodyXs = unwrap(bodyXs);
+            bodyYs = unwrap(bodyYs);
+            tail = 0;
+        }
+        final int i = (tail + length++) & (body.length - 1);
+        body[i] = cell;
+        bodyXs[i] = X_OF[cell];
+        bodyYs[i] = Y_OF[cell];
+        occupancy[cell]++;
+    }
+
+    /*
+     * Copies a full ring into one twice the size, tail first.
+     */
+    private int[] unwrap(final int[] ring){
+        final int[] grown = new int[ring.length << 1];
+        for(int i = 0; i < length; i++) grown[i] = ring[(tail + i) & (ring.length - 1)];
+        return grown;
+    }
+
+    /**
+     * Drops the tail segment of the snake.
+     *
+     * @return the cell of the tail dropped
+     * @throws IllegalStateException if the snake has no segments
+     */
+    public int pop(){
+        if(length == 0) throw new IllegalStateException("The snake is empty.");
+        final int cell = body[tail];
+        occupancy[cell]--;
+        tail = (tail + 1) & (body.length - 1);
+        length--;
+        return cell;
+    }
+
+    /**
+     * Exposes the number of segments in the snake.
+     */
+    public int length(){
+        return length;
+    }
+
+    /**
+     * Exposes a segment of the snake, counting from the tail.
+     *
+     * @param i the segment index, {@code 0} being the tail
+     * @return the cell of the segment
+     */
+    public int segment(final int i){
+        return body[(tail + i) & (body.length - 1)];
+    }
+
+    /**
+     * Exposes the left pixel of a segment of the snake.
+     *
+     * @param i the segment index, {@code 0} being the tail
+     * @return the horizontal coordinate
+     */
+    public int segmentX(final int i){
+        return bodyXs[(tail + i) & (body.length - 1)];
+    }
+
+    /**
+     * Exposes the top pixel of a segment of the snake.
+     *
+     * @param i the segment index, {@code 0} being the tail
+     * @return the vertical coordinate
+     */
+    public int segmentY(final int i){
+        return bodyYs[(tail + i) & (body.length - 1)];
+    }
+
+    /**
+     * Exposes the ring of the snake's cells, for walks over the whole snake.
+     * From the tail, the segments are at {@code [spanStart(), spanEnd())}
+     * and then at {@code [0, wrapEnd())}. The array is replaced as the snake
+     * grows, so it is only good until the next {@link #push(int)}.
+     *
+     * @return the ring of cells
+     */
+    public int[] segmentCells(){
+        return body;
+    }
+
+    /**
+     * Exposes the ring of the snake's left pixels, laid out as
+     * {@link #segmentCells()}.
+     *
+     * @return the ring of horizontal coordinates
+     */
+    public int[] segmentXs(){
+        return bodyXs;
+    }
+
+    /**
+     * Exposes the ring of the snake's top pixels, laid out as
+     * {@link #segmentCells()}.
+     *
+     * @return the ring of vertical coordinates
+     */
+    public int[] segmentYs(){
+        return bodyYs;
+    }
+
+    /**
+     * Exposes the start of the first span of the ring: the tail.
+     */
+    public int spanStart(){
+        return tail;
+    }
+
+    /**
+     * Exposes the end of the first span of the ring, exclusive.
+     */
+    public int spanEnd(){
+        return Math.min(tail + length, body.length);
+    }
+
+    /**
+     * Exposes the end of the second span of the ring, exclusive, which
+     * starts at {@code 0}. It is {@code 0} unless the snake wraps around.
+     */
+    public int wrapEnd(){
+        return Math.max(0, tail + length - body.length);
+    }
+
+    /**
+     * Exposes the cell of the head of the snake.
+     *
+     * @return the head cell
+     */
+    public int head(){
+        return segment(length - 1);
+    }
+
+    /**
+     * Exposes the number of segments of the snake on a cell.
+     *
+     * @param cell the cell
+     * @return the number of segments
+     */
+    public int occupancy(final int cell){
+        return occupancy[cell];
+    }
+
+    /**
+     * Removes every entity and the whole snake.
+     */
+    public void clear(){
+        for(int i = 0; i < size; i++) slots[kinds[i] * Engine.CELLS + cells[i]] = 0;
+        Arrays.fill(counts, 0);
+        size = 0;
+        detonated = 0;
+        while(length > 0) pop();
+        tail = 0;
+    }
+
+    /**
+     * Draws the snake, apples and mines into a board in {@code Engine}'s
+     * layout.
+     *
+     * @param board a board of {@code Engine.CELLS} cells
+     */
+    public void draw(final byte[] board){
+        Engine.clear(board);
+        for(int i = tail, end = spanEnd(); i < end; i++) board[body[i]]++;
+        for(int i = 0, end = wrapEnd(); i < end; i++) board[body[i]]++;
+        for(int i = 0; i < size; i++) {
+            board[cells[i]] |= kinds[i] == APPLE? Engine.APPLE:
+                    Engine.MINE | ((flags[i] & DETONATED) != 0? Engine.DETONATED: 0);
+        }
+    }
+
+    /**
+     * Compares a tick of snakes of {@code [lengths]} (comma-separated)
+     * segments among {@code [apples]} apples and as many mines, held as the
+     * object graph {@code GridPanel} used to keep (a list and map of segments
+     * rebuilt on each move, a list of apples rebuilt on each check, each
+     * entity an object holding a {@code Point}) against an
+     * {@code EntityStore}: the
+     * update (move the snake, check the head for an apple, a mine and a
+     * tail-bite) and the walk the painting makes over every entity's
+     * position and color, gathered into a batch of fills. A snake longer
+     * than the board winds around it again, overlapping itself, as the
+     * {@code Stress} suite's long snake does. Reports the time of each and
+     * how many times faster the store is.
+     */
+    public static void main(final String[] args){
+        final int[] lengths = args.length > 0? parse(args[0]): new int[]{1_000, 4_000, 10_000, 50_000};
+        final int apples = args.length > 1? Integer.parseInt(args[1]): 120;
+        final int ticks = args.length > 2? Integer.parseInt(args[2]): 2_000;
+        if(2 * apples > Engine.COLUMNS * Engine.ROWS) {
+            throw new IllegalArgumentException(2 * apples + " apples and mines do not fit on the board.");
+        }
+        System.out.printf("%8s %9s %13s %13s %7s %13s %13s %7s %16s%n", "segments", "entities",
+                "graph update", "store update", "", "graph walk", "store walk", "", "ticks/s");
+        for(int length: lengths) {
+            final Bench bench = new Bench(length, apples, 0);
+            //Warm up, then measure.
+            bench.run(ticks);
+            final double[] t = bench.run(ticks);
+            final double graph = 1e9 / (t[0] + t[2]), store = 1e9 / (t[1] + t[3]);
+            System.out.printf("%8d %9d %11.1fus %11.1fus %6.1fx %11.1fus %11.1fus %6.1fx %7.0f vs %-7.0f%n",
+                    length, length + 2 * apples, t[0] / 1e3, t[1] / 1e3, t[0] / t[1],
+                    t[2] / 1e3, t[3] / 1e3, t[2] / t[3], graph, store);
+        }
+    }
+
+    private static int[] parse(final String list){
+        final String[] parts = list.split(",");
+        final int[] values = new int[parts.length];
+        for(int i = 0; i < parts.length; i++) values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
+
+    /*
+     * The same board held both ways, and the snake steered along the same
+     * Hamiltonian cycle through both.
+     */
+    private static final class Bench {
+
+        private static final int[] COLORS = {0xFF0000, 0xFFFF00, 0xFFFFFF};
+
+        private final int[] next;
+        private final int[] batch;
+        private final EntityStore store = new EntityStore();
+        private final SplittableRandom random;
+        private int head;
+        private long sink;
+
+        //The object graph, as it was.
+        private List<Node> snake = new ArrayList<>();
+        private Map<Point, Node> segmentMap = new HashMap<>();
+        private List<Node> appleList = new ArrayList<>();
+        private final List<Node> mineList = new ArrayList<>();
+        private final Map<Point, Node> mineMap = new HashMap<>();
+
+        Bench(final int length, final int apples, final long seed){
+            random = new SplittableRandom(seed);
+            batch = new int[3 * (length + 2 * apples)];
+            final int[] cycle = Hamiltonian.cycle(Engine.COLUMNS, Engine.ROWS);
+            next = new int[Engine.CELLS];
+            for(int i = 0; i < cycle.length; i++) {
+                if(cycle[i] < 0) continue;
+                next[Engine.cell(i % Engine.COLUMNS, i / Engine.COLUMNS)] =
+                        Engine.cell(cycle[i] % Engine.COLUMNS, cycle[i] / Engine.COLUMNS);
+            }
+            head = Engine.cell(0, 0);
+            for(int i = 0; i < length; i++) {
+                head = next[head];
+                store.push(head);
+                snake.add(new Segment(point(head)));
+            }
+            for(int i = 0; i < snake.size() - 1; i++) segmentMap.put(snake.get(i).location, snake.get(i));
+            for(int i = 0; i < apples; i++) {
+                place(EntityStore.APPLE);
+                place(EntityStore.MINE);
+            }
+        }
+
+        /*
+         * Places an entity of a kind on a random empty cell, both ways.
+         */
+        private void place(final int kind){
+            int c;
+            do c = Engine.cell(random.nextInt(Engine.COLUMNS), random.nextInt(Engine.ROWS));
+            while(store.occupied(c));
+            store.add(kind, c);
+            if(kind == EntityStore.APPLE) {
+                appleList.add(new Apple(point(c)));
+            } else {
+                final Node m = new Mine(point(c));
+                mineList.add(m);
+                mineMap.put(m.location, m);
+            }
+        }
+
+        /*
+         * Times each of the four for a number of ticks, returning the mean
+         * nanoseconds per tick: graph update, store update, graph walk,
+         * store walk.
+         */
+        double[] run(final int ticks){
+            final long[] nanos = new long[4];
+            for(int t = 0; t < ticks; t++) {
+                final int h = next[head];
+                long t0 = System.nanoTime();
+                graphUpdate(h);
+                long t1 = System.nanoTime();
+                storeUpdate(h);
+                long t2 = System.nanoTime();
+                nanos[0] += t1 - t0;
+                nanos[1] += t2 - t1;
+                head = h;
+                t0 = System.nanoTime();
+                graphWalk();
+                t1 = System.nanoTime();
+                storeWalk();
+                t2 = System.nanoTime();
+                nanos[2] += t1 - t0;
+                nanos[3] += t2 - t1;
+            }
+            final double[] mean = new double[4];
+            for(int i = 0; i < 4; i++) mean[i] = nanos[i] / (double) ticks;
+            return mean;
+        }
+
+        /*
+         * GridPanel.update() as it was: the apple list rebuilt by an equals
+         * scan, the mine looked up, the map checked, and the snake's list
+         * and map rebuilt for the move.
+         */
+        private void graphUpdate(final int h){
+            final Node headNode = snake.get(snake.size() - 1);
+            final List<Node> replacementApples = new ArrayList<>();
+            boolean eaten = false;
+            for(Node a: appleList) {
+                if(!a.equals(headNode)) replacementApples.add(a);
+                else eaten = true;
+            }
+            appleList = replacementApples;
+            if(mineMap.containsKey(headNode.location) || segmentMap.containsKey(headNode.location) || eaten) sink++;
+            final List<Node> replacementList = new ArrayList<>();
+            final Map<Point, Node> replacementMap = new HashMap<>();
+            for(int i = 1; i < snake.size(); i++) {
+                final Node s = snake.get(i);
+                replacementList.add(s);
+                replacementMap.put(s.location, s);
+            }
+            replacementList.add(new Segment(point(h)));
+            snake = replacementList;
+            segmentMap = replacementMap;
+        }
+
+        /*
+         * The same update against the store.
+         */
+        private void storeUpdate(final int h){
+            final int c = store.head();
+            if(store.contains(EntityStore.MINE, c) || store.occupancy(c) > 1
+                    || store.remove(EntityStore.APPLE, c)) sink++;
+            store.pop();
+            store.push(h);
+        }
+
+        /*
+         * Every entity's position and color, through its virtual paint(),
+         * into a batch of fills.
+         */
+        private void graphWalk(){
+            int n = 0;
+            for(Node s: snake) n = s.paint(batch, n);
+            for(Node a: appleList) n = a.paint(batch, n);
+            for(Node m: mineList) n = m.paint(batch, n);
+            sink += n;
+        }
+
+        /*
+         * The same batch from the store's arrays, the snake as the two spans
+         * of its ring.
+         */
+        private void storeWalk(){
+            int n = 0;
+            final int[] xs = store.segmentXs(), ys = store.segmentYs();
+            for(int i = store.spanStart(), end = store.spanEnd(); i < end; i++) {
+                batch[n++] = xs[i];
+                batch[n++] = ys[i];
+                batch[n++] = COLORS[2];
+            }
+            for(int i = 0, end = store.wrapEnd(); i < end; i++) {
+                batch[n++] = xs[i];
+                batch[n++] = ys[i];
+                batch[n++] = COLORS[2];
+            }
+            for(int i = 0, size = store.size(); i < size; i++) {
+                batch[n++] = store.x(i);
+                batch[n++] = store.y(i);
+                batch[n++] = COLORS[store.kind(i)];
+            }
+            sink += n;
+        }
+
+        private static Point point(final int cell){
+            return new Point(X_OF[cell], Y_OF[cell]);
+        }
+
+        private static final class Point {
+            final int x, y;
+            Point(final int x, final int y){ this.x = x; this.y = y; }
+            @Override public boolean equals(Object o){
+                return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+            }
+            @Override public int hashCode(){ return 31 * (31 + x) + y; }
+        }
+
+        private static abstract class Node {
+            final Point location;
+            Node(final Point location){ this.location = location; }
+            @Override public boolean equals(Object o){
+                return o instanceof Node && ((Node) o).location.equals(location);
+            }
+            @Override public int hashCode(){ return location.hashCode(); }
+            abstract int paint(int[] batch, int n);
+            final int fill(final int[] batch, int n, final int color){
+                batch[n++] = location.x;
+                batch[n++] = location.y;
+                batch[n++] = color;
+                return n;
+            }
+        }
+
+        private static final class Segment extends Node {
+            Segment(final Point location){ super(location); }
+            @Override int paint(final int[] batch, final int n){ return fill(batch, n, COLORS[2]); }
+        }
+
+        private static class Apple extends Node {
+            Apple(final Point location){ super(location); }
+            @Override int paint(final int[] batch, final int n){ return fill(batch, n, COLORS[0]); }
+        }
+
+        private static final class Mine extends Apple {
+            Mine(final Point location){ super(location); }
+            @Override int paint(final int[] batch, final int n){ return fill(batch, n, COLORS[1]); }
+        }
+
+    }
+
+}
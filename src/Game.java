@@ -1,4 +1,3 @@
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.Timer;
 import java.awt.*;
@@ -6,8 +5,9 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.List;
 
@@ -16,21 +16,27 @@ import java.util.List;
  */
 public final class Game {
 
-    /**
-     * A singleton instance of {@code Game}.
-     */
-    public static final Game INSTANCE;
-
     /**
      * The color of this{@code Game}'s {@code ScorePanel} component.
      */
     public static final Color SCORE_PANEL_COLOR;
 
     /**
-     * The path to this {@code Game}'s Icon.
+     * The classpath resource of this {@code Game}'s Icon.
      */
     public static final String ICON_PATH;
 
+    /**
+     * System properties. {@code snek.timing} reports the time to the first
+     * frame; {@code snek.training} also exits once it has been painted, so
+     * a launcher can record a class-data-sharing archive of startup.
+     * {@code snek.launched} is the launch time in epoch milliseconds, when
+     * the launcher knows it better than the process start time.
+     */
+    public static final String TIMING_PROPERTY;
+    public static final String TRAINING_PROPERTY;
+    public static final String LAUNCHED_PROPERTY;
+
     /**
      * Dimensions for use in JFrame initialization.
      */
@@ -42,8 +48,18 @@ public final class Game {
         LENGTH = 600;
         SCORE_PANEL_COLOR = new Color(0,30,32);
         GAME_FRAME_SIZE = new Dimension(LENGTH, LENGTH);
-        ICON_PATH = "C:/Users/evcmo/IdeaProjects/Snake/icon/snake.png";
-        INSTANCE = new Game();
+        ICON_PATH = "/snake.png";
+        TIMING_PROPERTY = "snek.timing";
+        TRAINING_PROPERTY = "snek.training";
+        LAUNCHED_PROPERTY = "snek.launched";
+    }
+
+    /*
+     * Holds the singleton instance of {@code Game}, so the GUI is built
+     * when it is first requested rather than when the class is loaded.
+     */
+    private static final class Holder {
+        private static final Game INSTANCE = new Game();
     }
 
     /**
@@ -61,26 +77,43 @@ public final class Game {
      */
     private final ScorePanel scorePanel;
 
+    /**
+     * The high-score store, opened when the first game ends.
+     */
+    private Leaderboard leaderboard;
+
+    /*
+     * Whether a frame has been painted yet.
+     */
+    private static boolean painted;
+
     /**
      * A private constructor for {@code Game}.
      */
     private Game(){
         gameFrame = new JFrame("SneK");
-        try {
-            gameFrame.setIconImage(ImageIO.read(new File(ICON_PATH)));
-        } catch(IOException e){
-            e.printStackTrace();
-        }
+        final Image icon = Assets.image(ICON_PATH);
+        if(icon != null) gameFrame.setIconImage(icon);
         gameFrame.setBackground(Color.WHITE);
         gameFrame.setSize(GAME_FRAME_SIZE);
         gameFrame.setLayout(new BorderLayout());
         gamePanel = GridPanel.INSTANCE;
         scorePanel = new ScorePanel();
+        gamePanel.setScorePanel(scorePanel);
         gameFrame.add(scorePanel, BorderLayout.NORTH);
         gameFrame.add(gamePanel, BorderLayout.CENTER);
         gameFrame.setResizable(false);
         gameFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        gameFrame.setVisible(true);
+    }
+
+    /**
+     * Exposes the singleton instance of {@code Game}, building the GUI on
+     * the first call. Call from the event dispatch thread.
+     *
+     * @return the {@code Game}
+     */
+    public static Game getInstance(){
+        return Holder.INSTANCE;
     }
 
     /**
@@ -110,9 +143,79 @@ public final class Game {
         return gamePanel;
     }
 
+    /**
+     * Records a finished game on the {@code Leaderboard}. The result is
+     * handed to the writer thread, so the index read here may not hold it yet.
+     *
+     * @param score the final score
+     * @param level the level reached
+     * @param cause why the game ended
+     * @param ticks how long the game lasted
+     * @return the best score on record, or the given score if the
+     *         {@code Leaderboard} cannot be opened
+     */
+    public final synchronized int recordScore(final int score,
+                                              final int level,
+                                              final Engine.Cause cause,
+                                              final int ticks){
+        try {
+            if(leaderboard == null) leaderboard = Leaderboard.openDefault();
+        } catch(IOException e){
+            e.printStackTrace();
+            return score;
+        }
+        leaderboard.record(score, level, cause, ticks);
+        final List<Leaderboard.Score> top = leaderboard.top(1);
+        return top.isEmpty()? score: Math.max(score, top.get(0).score);
+    }
+
+    /*
+     * Called after every paint of the {@code GridPanel}. The first call
+     * reports the time since launch if asked to, and exits if training.
+     */
+    private static void framePainted(){
+        if(painted) return;
+        painted = true;
+        final boolean training = Boolean.getBoolean(TRAINING_PROPERTY);
+        if(training || Boolean.getBoolean(TIMING_PROPERTY)) {
+            final long launched = launchTime();
+            System.err.printf("First frame %s%n", launched < 0? "painted":
+                    String.format("after %d ms", System.currentTimeMillis() - launched));
+        }
+        if(training) {
+            SwingUtilities.invokeLater(new Runnable(){
+                @Override
+                public void run() {
+                    System.exit(0);
+                }
+            });
+        }
+    }
+
+    /*
+     * The launch time in epoch milliseconds, from the launcher if it passed
+     * one and from the process start time if not, or -1 if neither is known.
+     */
+    private static long launchTime(){
+        final String launched = System.getProperty(LAUNCHED_PROPERTY);
+        if(launched != null) {
+            try {
+                return Long.parseLong(launched);
+            } catch(NumberFormatException e){
+                //Fall back on the process start time.
+            }
+        }
+        return ProcessHandle.current().info().startInstant().map(java.time.Instant::toEpochMilli).orElse(-1L);
+    }
+
     //Show.
     public static void main(String[] args){
-        Game.INSTANCE.gameFrame.setVisible(true);
+        SwingUtilities.invokeLater(new Runnable(){
+            @Override
+            public void run() {
+                getInstance().gameFrame.setVisible(true);
+            }
+        });
     }
 
     /**
@@ -134,13 +237,22 @@ public final class Game {
      */
     public static final class ScorePanel extends JPanel {
 
+        /*
+         * What the label shows, kept so a status can be set without a score.
+         */
+        private int level;
+        private int score;
+        private int tailBites;
+        private String status;
+
         /**
          * A public constructor for a {@code ScorePanel}.
          */
         public ScorePanel() {
             super();
             setBackground(SCORE_PANEL_COLOR);
-            add(updateLabel(0,0, GridPanel.DEFAULT_TAIL_BITE_QUANTITY));
+            tailBites = GridPanel.DEFAULT_TAIL_BITE_QUANTITY;
+            add(updateLabel(0,0, tailBites, null));
             setVisible(true);
         }
 
@@ -150,11 +262,39 @@ public final class Game {
          * @param level the current level
          * @param score the current score
          */
-        public final void update(final int level,
-                                 final int score,
-                                 final int tailBites){
+        public final synchronized void update(final int level,
+                                              final int score,
+                                              final int tailBites){
+            this.level = level;
+            this.score = score;
+            this.tailBites = tailBites;
+            refresh();
+        }
+
+        /**
+         * A method to show a status in place of the hint, such as a recording
+         * in progress.
+         *
+         * @param status the status, or null to show the hint again
+         */
+        public final synchronized void setStatus(final String status){
+            this.status = status;
+            refresh();
+        }
+
+        /**
+         * A method to reset the {@code ScorePanel}.
+         */
+        public final void reset(){
+            update(0,0, GridPanel.DEFAULT_TAIL_BITE_QUANTITY);
+        }
+
+        /*
+         * Replaces the label with one showing the current fields.
+         */
+        private void refresh(){
             removeAll();
-            add(updateLabel(level, score, tailBites));
+            add(updateLabel(level, score, tailBites, status));
             SwingUtilities.invokeLater(new Runnable(){
                 @Override
                 public void run() {
@@ -164,21 +304,16 @@ public final class Game {
             });
         }
 
-        /**
-         * A method to reset the {@code ScorePanel}.
-         */
-        public final void reset(){
-            update(0,0, GridPanel.DEFAULT_TAIL_BITE_QUANTITY);
-        }
-
-        // Returns a new label given a level and score.
+        // Returns a new label given a level, score and status.
         private static JLabel updateLabel(final int level,
                                           final int score,
-                                          final int tailBites){
+                                          final int tailBites,
+                                          final String status){
             final JLabel label = new JLabel();
             label.setText(String.format(
                     "%s     Level: %d     Score: %d     Remaining Tail Bites: %d",
-                    (level == 1? "Apples go monch!":
+                    (status != null? status:
+                            level == 1? "Apples go monch!":
                             level == GridPanel.MINE_INTRODUCTION_LEVEL? "Mines go boom!":
                                     (level & 3) == 0? "Don't eat your tail!":
                                             "Press 'esc' to pause."), level, score, tailBites
@@ -205,44 +340,76 @@ public final class Game {
         public static final int MINE_INCREMENT;
         public static final int SCORE_INCREMENT;
         public static final int MINE_INTRODUCTION_LEVEL;
+        public static final int BLAST_LIFETIME;
         public static final Color HEAD_COLOR;
         public static final Color SEGMENT_COLOR;
         public static final Color APPLE_COLOR;
         public static final Color MINE_COLOR;
         public static final int DEFAULT_SNAKE_SIZE;
         public static final int DEFAULT_UPDATE_INTERVAL;
+        public static final int FRAME_INTERVAL;
         public static final int HORIZONTAL_BOUND;
         public static final int VERTICAL_BOUND;
         public static final Random rgen;
         public static final GridPanel INSTANCE;
 
+        /*
+         * Thirds of the horizontal and vertical boundaries respectively, in
+         * cells, for spawning.
+         */
+        private static final int X_THIRD;
+        private static final int Y_THIRD;
+
+        /*
+         * The colors of the entities, indexed by kind plus KINDS times their
+         * flags. Detonated mines are painted over by their blasts.
+         */
+        private static final Color[] ENTITY_COLORS;
+
+        /*
+         * How long a status other than a recording in progress is shown, in
+         * milliseconds.
+         */
+        private static final int STATUS_MILLIS;
+
         /* init */
         static {
-            SQUARE_SIZE = 8;
+            SQUARE_SIZE = Engine.SQUARE_SIZE;
             SQUARE_BUFF = 2;
-            DEFAULT_APPLE_QUANTITY = 1;
-            DEFAULT_MINE_QUANTITY = 1;
-            DEFAULT_TAIL_BITE_QUANTITY = 5;
-            DEFAULT_SCORE = 80;
-            APPLE_INCREMENT = 2;
-            MINE_INCREMENT = 1;
-            SCORE_INCREMENT = 8;
-            MINE_INTRODUCTION_LEVEL = 6;
+            DEFAULT_APPLE_QUANTITY = Engine.DEFAULT_APPLE_QUANTITY;
+            DEFAULT_MINE_QUANTITY = Engine.DEFAULT_MINE_QUANTITY;
+            DEFAULT_TAIL_BITE_QUANTITY = Engine.DEFAULT_TAIL_BITE_QUANTITY;
+            DEFAULT_SCORE = Engine.DEFAULT_SCORE;
+            APPLE_INCREMENT = Engine.APPLE_INCREMENT;
+            MINE_INCREMENT = Engine.MINE_INCREMENT;
+            SCORE_INCREMENT = Engine.SCORE_INCREMENT;
+            MINE_INTRODUCTION_LEVEL = Engine.MINE_INTRODUCTION_LEVEL;
+            BLAST_LIFETIME = 25;
             PANEL_SIZE = new Dimension(Game.LENGTH, Game.LENGTH);
-            HEAD_COLOR = new Color(15,100,50);
-            SEGMENT_COLOR = new Color(10,255,100);
-            APPLE_COLOR = new Color(250, 10, 10);
-            DEFAULT_SNAKE_SIZE = 10;
+            HEAD_COLOR = Palette.color(Palette.HEAD);
+            SEGMENT_COLOR = Palette.color(Palette.SEGMENT);
+            APPLE_COLOR = Palette.color(Palette.APPLE);
+            DEFAULT_SNAKE_SIZE = Engine.DEFAULT_SNAKE_SIZE;
             DEFAULT_UPDATE_INTERVAL = 7500000;
-            HORIZONTAL_BOUND = 576;
-            VERTICAL_BOUND = 528;
-            MINE_COLOR = new Color(200,0,100);
+            FRAME_INTERVAL = 16;
+            HORIZONTAL_BOUND = Engine.HORIZONTAL_BOUND;
+            VERTICAL_BOUND = Engine.VERTICAL_BOUND;
+            MINE_COLOR = Palette.color(Palette.MINE);
+            X_THIRD = 24;
+            Y_THIRD = 22;
+            ENTITY_COLORS = new Color[]{APPLE_COLOR, MINE_COLOR, Color.BLACK, Color.BLACK};
+            STATUS_MILLIS = 3000;
             rgen = new Random();
             INSTANCE = new GridPanel();
         }
 
-        private enum KeyAction {
-            MOVE_RIGHT {
+        /**
+         * The actions keys are bound to. In two-player play each player has
+         * a key set of their own: WASD for the first, the arrows for the
+         * second.
+         */
+        enum KeyAction {
+            MOVE_RIGHT(Direction.RIGHT) {
                 @Override
                 public void perform() {
                     if(!INSTANCE.currentDirection.isLeft()) {
@@ -250,7 +417,7 @@ public final class Game {
                     }
                 }
             },
-            MOVE_LEFT {
+            MOVE_LEFT(Direction.LEFT) {
                 @Override
                 public void perform() {
                     if(!INSTANCE.currentDirection.isRight()) {
@@ -258,7 +425,7 @@ public final class Game {
                     }
                 }
             },
-            MOVE_UP {
+            MOVE_UP(Direction.UP) {
                 @Override
                 public void perform() {
                     if(!INSTANCE.currentDirection.isDown()) {
@@ -266,7 +433,7 @@ public final class Game {
                     }
                 }
             },
-            MOVE_DOWN {
+            MOVE_DOWN(Direction.DOWN) {
                 @Override
                 public void perform() {
                     if(!INSTANCE.currentDirection.isUp()) {
@@ -280,11 +447,46 @@ public final class Game {
                     INSTANCE.gameStatus = INSTANCE.gameStatus.pause();
                 }
             },
+            AUTOPILOT {
+                @Override
+                public void perform() {
+                    INSTANCE.autopilotEngaged = !INSTANCE.autopilotEngaged;
+                }
+            },
+            RECORD {
+                @Override
+                public void perform() {
+                    INSTANCE.toggleRecording();
+                }
+            },
             NULL { @Override public void perform() { } };
 
+            /*
+             * The direction a move turns to, or null for other actions.
+             */
+            private final Direction direction;
+
+            KeyAction(){
+                this(null);
+            }
+
+            KeyAction(final Direction direction){
+                this.direction = direction;
+            }
+
             public abstract void perform();
 
+            /**
+             * Exposes the direction a move turns to.
+             *
+             * @return the direction, or null if the action is not a move
+             */
+            public Direction direction() {
+                return direction;
+            }
+
             private static final ChainedMap<Integer, KeyAction> KEY_ACTIONS;
+            private static final List<ChainedMap<Integer, KeyAction>> PLAYER_KEY_ACTIONS;
             static {
                 KEY_ACTIONS = new ChainedMap<Integer, KeyAction>()
                         .place(KeyEvent.VK_RIGHT, MOVE_RIGHT)
@@ -295,7 +497,21 @@ public final class Game {
                         .place(KeyEvent.VK_W, MOVE_UP)
                         .place(KeyEvent.VK_DOWN, MOVE_DOWN)
                         .place(KeyEvent.VK_S, MOVE_DOWN)
-                        .place(KeyEvent.VK_ESCAPE, PAUSE);
+                        .place(KeyEvent.VK_ESCAPE, PAUSE)
+                        .place(KeyEvent.VK_P, AUTOPILOT)
+                        .place(KeyEvent.VK_R, RECORD);
+                PLAYER_KEY_ACTIONS = List.of(
+                        new ChainedMap<Integer, KeyAction>()
+                                .place(KeyEvent.VK_D, MOVE_RIGHT)
+                                .place(KeyEvent.VK_A, MOVE_LEFT)
+                                .place(KeyEvent.VK_W, MOVE_UP)
+                                .place(KeyEvent.VK_S, MOVE_DOWN),
+                        new ChainedMap<Integer, KeyAction>()
+                                .place(KeyEvent.VK_RIGHT, MOVE_RIGHT)
+                                .place(KeyEvent.VK_LEFT, MOVE_LEFT)
+                                .place(KeyEvent.VK_UP, MOVE_UP)
+                                .place(KeyEvent.VK_DOWN, MOVE_DOWN)
+                );
             }
 
             public static KeyAction get(final int keyEvent) {
@@ -303,6 +519,32 @@ public final class Game {
                 return ka == null? NULL: ka;
             }
 
+            /**
+             * Looks up a key in a player's key set.
+             *
+             * @param player the player, 0 or 1
+             * @param keyEvent the key code
+             * @return the action, or NULL if the key is not in the set
+             */
+            public static KeyAction get(final int player, final int keyEvent) {
+                final KeyAction ka = PLAYER_KEY_ACTIONS.get(player).get(keyEvent);
+                return ka == null? NULL: ka;
+            }
+
+            /**
+             * The number of players with a key set of their own.
+             *
+             * @return the number of key sets
+             */
+            public static int players() {
+                return PLAYER_KEY_ACTIONS.size();
+            }
+
+            public static KeyAction get(final Direction direction) {
+                return direction.isUp()? MOVE_UP: direction.isDown()? MOVE_DOWN:
+                        direction.isLeft()? MOVE_LEFT: MOVE_RIGHT;
+            }
+
             private static final class ChainedMap<K,V> extends HashMap<K,V> {
                 public final ChainedMap<K,V> place(K k, V v){ put(k,v); return this; }
             }
@@ -315,14 +557,10 @@ public final class Game {
         private GameStatus gameStatus;
 
         /**
-         * A {@code List} of the {@code Segment}s that comprise the snake.
+         * The snake, apples and mines, as parallel arrays in an
+         * {@code EntityStore}.
          */
-        private List<Segment> snake;
-
-        /**
-         * A {@code Map} of all the {@code Segment}s that comprise the snake.
-         */
-        private Map<Point, Segment> segmentMap;
+        private final EntityStore entities;
 
         /**
          * The current direction of the snake.
@@ -330,9 +568,9 @@ public final class Game {
         private Direction currentDirection;
 
         /**
-         * The current location of the head of the snake.
+         * The {@code Engine} cell of the head of the snake.
          */
-        private Point currentLocation;
+        private int currentLocation;
 
         /**
          * The legal size of the snake.
@@ -340,17 +578,12 @@ public final class Game {
         private int legalSnakeSize;
 
         /**
-         * A {@code List} of all current {@code Apple}s on the grid.
-         */
-        private List<Apple> apples;
-
-        /**
-         * The legal number of {@code Apple}s. This number changes with each level.
+         * The legal number of apples. This number changes with each level.
          */
         private int legalNumberOfApples;
 
         /**
-         * The legal number of {@code Mine}s. This number changes with each level.
+         * The legal number of mines. This number changes with each level.
          */
         private int legalNumberOfMines;
 
@@ -370,14 +603,59 @@ public final class Game {
         private int tailBites;
 
         /**
-         * A {@code List} of all current {@code Mine}s on the grid.
+         * The number of updates this game has run for.
          */
-        private List<Mine> mines;
+        private int ticks;
+
+        /**
+         * Whether or not the {@code Autopilot} is steering.
+         */
+        private boolean autopilotEngaged;
+
+        /**
+         * The {@code Autopilot}.
+         */
+        private final Autopilot autopilot;
+
+        /**
+         * The {@code Recorder} of the recording in progress, if any.
+         */
+        private Recorder recorder;
+
+        /**
+         * The board redrawn in {@code Engine}'s layout for the {@code Autopilot}
+         * and the {@code Recorder}.
+         */
+        private final byte[] engineBoard;
+
+        /**
+         * The {@code ScorePanel} to show the score on, if any.
+         */
+        private ScorePanel scorePanel;
+
+        /**
+         * The status last shown on the {@code ScorePanel}, if any.
+         */
+        private String status;
+
+        /**
+         * The game thread, running while the panel is displayable.
+         */
+        private final Timer timer;
+
+        /**
+         * Paces updates on the game thread's frames, faster with each level.
+         */
+        private final TickScheduler scheduler;
 
         /**
          * A public constructor for a {@code GridPanel}.
          */
         private GridPanel(){
+            autopilot = new Autopilot();
+            engineBoard = new byte[Engine.CELLS];
+            entities = new EntityStore();
+            scheduler = new TickScheduler();
             setSize(PANEL_SIZE);
             setBackground(Color.DARK_GRAY);
             //Initialize fields.
@@ -390,24 +668,97 @@ public final class Game {
                     KeyAction.get(e.getKeyCode()).perform();
                 }
             });
-            //Start up game thread.
-            (new Timer(20, new ActionListener() {
+            //Game thread, started once the panel is shown.
+            timer = new Timer(FRAME_INTERVAL, new ActionListener() {
                 @Override
                 public void actionPerformed(ActionEvent e) {
-                    if(gameStatus.isRunning()) update();
+                    frame();
                 }
-            })).start();
+            });
+        }
+
+        /*
+         * A frame of the game thread: runs the updates the scheduler has due,
+         * however many that is, and then repaints once.
+         */
+        private void frame(){
+            final long now = System.nanoTime();
+            if(!gameStatus.isRunning()) {
+                scheduler.idle(now);
+                return;
+            }
+            scheduler.frame(now);
+            while(gameStatus.isRunning() && scheduler.next()) {
+                if(autopilotEngaged) pilot();
+                update();
+            }
+            repaint();
+        }
+
+        /**
+         * Starts the game thread as the panel becomes displayable.
+         */
+        @Override
+        public void addNotify(){
+            super.addNotify();
+            timer.start();
+        }
+
+        /**
+         * Stops the game thread as the panel stops being displayable.
+         */
+        @Override
+        public void removeNotify(){
+            timer.stop();
+            super.removeNotify();
+        }
+
+        /**
+         * Sets the {@code ScorePanel} the score is shown on.
+         *
+         * @param scorePanel the {@code ScorePanel}
+         */
+        final void setScorePanel(final ScorePanel scorePanel){
+            this.scorePanel = scorePanel;
+        }
+
+        /*
+         * Shows the level, score and tail-bites on the ScorePanel, if there is one.
+         */
+        private void showScore(){
+            if(scorePanel != null) scorePanel.update(level, score, tailBites);
+        }
+
+        /*
+         * Shows a status on the ScorePanel, if there is one. A status other than
+         * a recording in progress is cleared again after a few seconds.
+         */
+        private synchronized void showStatus(final String status){
+            if(scorePanel == null) return;
+            final ScorePanel panel = scorePanel;
+            this.status = status;
+            panel.setStatus(status);
+            if(recorder != null) return;
+            final Timer clear = new Timer(STATUS_MILLIS, new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    synchronized(GridPanel.this) {
+                        if(GridPanel.this.status != status) return;
+                        GridPanel.this.status = null;
+                        panel.setStatus(null);
+                    }
+                }
+            });
+            clear.setRepeats(false);
+            clear.start();
         }
 
         /*
          * A method to initialize fields and avoid redundancy.
          */
         private void init(){
-            snake = Collections.emptyList();
-            apples = Collections.emptyList();
-            mines = Collections.emptyList();
-            segmentMap = Collections.emptyMap();
-            currentLocation = new Point(SQUARE_SIZE, SQUARE_SIZE);
+            entities.clear();
+            currentLocation = Engine.cell(1, 1);
             legalSnakeSize = DEFAULT_SNAKE_SIZE;
             currentDirection = Direction.RIGHT;
             gameStatus = GameStatus.RUNNING;
@@ -416,6 +767,8 @@ public final class Game {
             tailBites = DEFAULT_TAIL_BITE_QUANTITY;
             level = 0;
             score = DEFAULT_SCORE;
+            ticks = 0;
+            scheduler.reset();
         }
 
         /**
@@ -428,7 +781,7 @@ public final class Game {
         /**
          * GameStatus
          */
-        private enum GameStatus {
+        enum GameStatus {
             RUNNING{
                 /** @inheritDoc */
                 @Override
@@ -502,120 +855,173 @@ public final class Game {
         }
 
         /*
-         * A method to house immediate game logic and to update the GUI when needed.
+         * A method to house immediate game logic, ending with the move of the
+         * snake.
          */
         private synchronized void update(){
+            ticks++;
+            entities.expire(ticks);
             populatePixelElements();
-            if(snake.size() > 2) {
-                final Segment head = snake.get(snake.size() - 1);
+            if(entities.length() > 2) {
+                final int head = entities.head();
+                final int x = Engine.column(head) * SQUARE_SIZE, y = Engine.row(head) * SQUARE_SIZE;
                 final boolean eatingMine = (level >= MINE_INTRODUCTION_LEVEL && eatingMine(head));
                 final boolean eatingSelf = tailBites <= 0;
-                if (head.getX() > HORIZONTAL_BOUND || head.getY() > VERTICAL_BOUND ||
-                        head.getX() < 0 || head.getY() < 0 || eatingMine || eatingSelf) {
+                if (x > HORIZONTAL_BOUND || y > VERTICAL_BOUND ||
+                        x < 0 || y < 0 || eatingMine || eatingSelf) {
                     gameStatus = GameStatus.PAUSED;
+                    final Engine.Cause cause = eatingMine? Engine.Cause.BOOM:
+                            eatingSelf? Engine.Cause.CHOMP: Engine.Cause.BONK;
+                    final int finalScore = score, finalLevel = level, finalTicks = ticks;
                     SwingUtilities.invokeLater(new Runnable() {
                         @Override
                         public void run() {
+                            final int best = Game.getInstance().recordScore(
+                                    finalScore, finalLevel, cause, finalTicks
+                            );
                             final int option = JOptionPane.showConfirmDialog(
-                                    Game.INSTANCE.getFrame(),
-                                    String.format("Your score is: %d%nTry again?", score),
-                                    (eatingMine? "Boom!": eatingSelf? "Chomp!": "Bonk!"),
+                                    Game.getInstance().getFrame(),
+                                    String.format("Your score is: %d%nBest: %d%nTry again?", finalScore, best),
+                                    cause.title(),
                                     JOptionPane.YES_NO_OPTION
                             );
                             if (option == JOptionPane.NO_OPTION) System.exit(0);
                             else if (option == JOptionPane.YES_OPTION) {
-                                Game.INSTANCE.reset();
+                                Game.getInstance().reset();
                             }
                         }
                     });
                 } else if (eatingApple(head)) {
                     legalSnakeSize++;
-                    Game.INSTANCE.getScorePanel().update(level, score += SCORE_INCREMENT, tailBites);
-                } else if (segmentMap.containsKey(head.getPoint())) {
-                    Game.INSTANCE.getScorePanel().update(level, score, --tailBites);
+                    score += SCORE_INCREMENT;
+                    showScore();
+                } else if (entities.occupancy(head) > 1) {
+                    tailBites--;
+                    showScore();
+                }
+            }
+            if(gameStatus.isRunning()) advanceSnake();
+            if(recorder != null) record();
+        }
+
+        /*
+         * A method to let the Autopilot steer through the same KeyActions as the
+         * keyboard. The board is redrawn into Engine's layout for it first.
+         */
+        private synchronized void pilot(){
+            if(entities.length() == 0) return;
+            entities.draw(engineBoard);
+            KeyAction.get(autopilot.decide(
+                    engineBoard, entities.head(), entities.segment(0),
+                    entities.length(), currentDirection
+            )).perform();
+        }
+
+        /*
+         * A method to hand the {@code Recorder} the board as it is after an update.
+         */
+        private void record(){
+            entities.draw(engineBoard);
+            recorder.capture(engineBoard, entities.length() == 0? -1: entities.head());
+        }
+
+        /*
+         * Starts recording to a new GIF under ~/.snek/recordings, or finishes the
+         * recording in progress. Finishing waits for the encoder, so it is done
+         * off the event dispatch thread. The ScorePanel shows which it is doing.
+         */
+        private synchronized void toggleRecording(){
+            if(recorder == null) {
+                final Path path = Paths.get(System.getProperty("user.home"), ".snek", "recordings",
+                        String.format("snek-%tY%<tm%<td-%<tH%<tM%<tS.gif", new Date()));
+                try {
+                    recorder = new Recorder(path, Recorder.DEFAULT_TICK_MILLIS, Recorder.DEFAULT_BUFFERED_FRAMES);
+                    showStatus("Recording " + path.getFileName() + ", 'r' to stop.");
+                } catch(IOException e){
+                    e.printStackTrace();
+                    showStatus("Recording failed.");
                 }
+                return;
             }
-            SwingUtilities.invokeLater(new Runnable() {
+            final Recorder finished = recorder;
+            recorder = null;
+            showStatus("Saving recording...");
+            new Thread(new Runnable() {
                 @Override
                 public void run() {
-                    validate();
-                    repaint();
+                    try {
+                        finished.close();
+                        showStatus("Recording saved.");
+                    } catch(IOException e){
+                        e.printStackTrace();
+                        showStatus("Recording failed.");
+                    }
                 }
-            });
+            }, "SneK-recording").start();
         }
 
         /*
-         * A method to populate the snake, apples, and mines Lists if needed.
-         * Apples and mines are updated at the end of each level, when the apples
-         * List is empty. Apples and mines are not allowed to be placed atop
+         * A method to populate the snake, apples, and mines if needed.
+         * Apples and mines are updated at the end of each level, when the last
+         * apple is eaten. Apples and mines are not allowed to be placed atop
          * already-present apples and mines.
          */
         private void populatePixelElements(){
-            if(snake.isEmpty()) snake = List.of(new Segment(currentLocation));
-            if(apples.isEmpty()){
-                Set<Apple> applesSet = new HashSet<>();
+            if(entities.length() == 0) entities.push(currentLocation);
+            if(entities.count(EntityStore.APPLE) == 0){
                 tailBites = DEFAULT_TAIL_BITE_QUANTITY;
-                level++;
-                final List<Apple> replacementApples = new ArrayList<>();
+                scheduler.setLevel(++level);
                 for(int i = 0; i < legalNumberOfApples; i++) {
-                    Apple a = new Apple(level);
-                    while (applesSet.contains(a)) {
-                        a = new Apple(level);
+                    int c = spawn(level);
+                    while (!entities.add(EntityStore.APPLE, c)) {
+                        c = spawn(level);
                     }
-                    applesSet.add(a);
-                    replacementApples.add(a);
                 }
-                apples = Collections.unmodifiableList(replacementApples);
                 legalNumberOfApples += APPLE_INCREMENT;
                 if(level >= MINE_INTRODUCTION_LEVEL){
-                    final List<Mine> replacementMines = new ArrayList<>();
+                    entities.clear(EntityStore.MINE);
                     for(int i = 0; i < legalNumberOfMines; i++) {
-                        Mine m = new Mine(level);
-                        while (applesSet.contains(m)) {
-                            m = new Mine(level);
+                        int c = spawn(level);
+                        while (entities.occupied(c)) {
+                            c = spawn(level);
                         }
-                        applesSet.add(m);
-                        replacementMines.add(m);
+                        entities.add(EntityStore.MINE, c);
                     }
-                    mines = Collections.unmodifiableList(replacementMines);
                     legalNumberOfMines += MINE_INCREMENT;
                 }
-                Game.INSTANCE.getScorePanel().update(level, score, tailBites);
+                showScore();
             }
         }
 
+        /*
+         * A method to pick the randomly-generated cell of an apple or mine.
+         * The interval of Random generation increases with each level so that
+         * apples will be placed closer to the center early on in the game.
+         */
+        private static int spawn(final int level){
+            //The interval stops widening once it spans the whole board.
+            int lowerXBound = level < X_THIRD >> 1? X_THIRD - (level << 1): 0;
+            int lowerYBound = level < Y_THIRD >> 1? Y_THIRD - (level << 1): 0;
+            int upperXBound = level < X_THIRD >> 1? X_THIRD + (level << 2): X_THIRD * 3;
+            int upperYBound = level < Y_THIRD >> 1? Y_THIRD + (level << 2): Y_THIRD * 3;
+            final int x = lowerXBound + rgen.nextInt(upperXBound);
+            return Engine.cell(x, lowerYBound + rgen.nextInt(upperYBound));
+        }
+
         /*
          * A method to determine whether or not the snake is eating an
-         * apple. If so, the apple is simply ignored upon updating the
-         * apples list.
+         * apple, removing the apple if so.
          */
-        private boolean eatingApple(final PixelElement pix){
-            final List<Apple> replacementApples = new ArrayList<>();
-            boolean eaten = false;
-            for(Apple a: apples){
-                if(!a.equals(pix)) replacementApples.add(a);
-                else eaten = true;
-            }
-            apples = Collections.unmodifiableList(replacementApples);
-            return eaten;
+        private boolean eatingApple(final int cell){
+            return entities.remove(EntityStore.APPLE, cell);
         }
 
         /*
          * A method to determine whether or not the snake is eating a mine,
-         * detonating the mine if so.
+         * detonating the mine if so. Its blast is painted until it expires.
          */
-        private boolean eatingMine(final PixelElement pix){
-            final List<Mine> replacementMines = new ArrayList<>();
-            boolean eaten = false;
-            for(Mine m: mines){
-                if(m.equals(pix)) {
-                    eaten = true;
-                    m = m.detonate();
-                }
-                replacementMines.add(m);
-            }
-            mines = Collections.unmodifiableList(replacementMines);
-            return eaten;
+        private boolean eatingMine(final int cell){
+            return entities.detonate(cell, ticks + BLAST_LIFETIME);
         }
 
         /**
@@ -630,295 +1036,81 @@ public final class Game {
             g.setColor(Color.BLACK);
             g.fillRect(0,0, Game.LENGTH, Game.LENGTH);
             paintSnake(g);
-            for(Apple a: apples) a.paint(g);
-            for(Mine m: mines) m.paint(g);
-        }
-
-        /*
-         * A method to paint the snake, updating the current location and creating
-         * a new head at this location. If the snake is legally-sized, the tail segment
-         * is simply ignored upon painting and updating of the snake List.
-         */
-        private void paintSnake(final Graphics g){
-            final List<Segment> replacementList = new ArrayList<>();
-            final Map<Point, Segment> replacementMap = new HashMap<>();
-            for(int i = (snake.size() > legalSnakeSize) ? 1: 0; i < snake.size(); i++) {
-                final Segment s = snake.get(i);
-                s.paint(g);
-                replacementList.add(s);
-                replacementMap.put(s.getPoint(), s);
-            }
-            final Segment s = new Segment(
-                    currentLocation = currentDirection.traverse(currentLocation)
-            );
-            s.paint(g);
-            replacementList.add(s);
-            snake = Collections.unmodifiableList(replacementList);
-            segmentMap = Collections.unmodifiableMap(replacementMap);
+            paintEntities(g);
+            framePainted();
         }
 
         /*
-         * Pixel Element
+         * A method to paint the apples and mines in one pass over the
+         * EntityStore, and then the blasts of detonated mines over them.
          */
-        private static abstract class PixelElement {
-
-            /*
-             * The location of the element on the cartesian coordinate system.
-             */
-            protected final Point location;
-
-            /*
-             * A public constructor for a PixelElement.
-             */
-            public PixelElement(final Point location){
-                this.location = location;
-            }
-
-            /*
-             * Exposes the horizontal coordinate.
-             */
-            public final int getX(){
-                return location.x;
-            }
-
-            /*
-             * Exposes the vertical coordinate.
-             */
-            public final int getY(){
-                return location.y;
-            }
-
-            /*
-             * Exposes the point.
-             */
-            public final Point getPoint(){
-                return location;
+        private void paintEntities(final Graphics g){
+            final int size = entities.size();
+            for(int i = 0; i < size; i++) {
+                paintSquare(g, entities.x(i), entities.y(i),
+                        ENTITY_COLORS[entities.kind(i) + EntityStore.KINDS * entities.flags(i)]);
             }
-
-            /*
-             * A method for comparing two PixelElements.
-             */
-            @Override
-            public boolean equals(Object other){
-                if(this == other) return true;
-                if(other == null) return false;
-                if(!(other instanceof PixelElement)) return false;
-                PixelElement cast = (PixelElement) other;
-                return this.location.equals(cast.location);
+            if(entities.detonated() == 0) return;
+            final int blastSize = SQUARE_SIZE << 2;
+            g.setColor(Color.WHITE);
+            for(int i = 0; i < size; i++) {
+                if((entities.flags(i) & EntityStore.DETONATED) == 0) continue;
+                g.fillRect(entities.x(i) - 20, entities.y(i) - 20, blastSize, blastSize);
             }
-
-            @Override
-            public int hashCode(){
-                return location.hashCode();
-            }
-
-            /*
-             * A method for paining the PixelElement.
-             */
-            public abstract void paint(Graphics g);
-
-        }
-
-        private static final class Segment extends PixelElement {
-
-            /*
-             * A field to indicate whether or not this segment is a
-             * head segment.
-             */
-            private boolean isHead;
-
-            /*
-             * A public constructor for a segment.
-             */
-            public Segment(final Point location){
-                super(location);
-                isHead = true;
-            }
-
-            /*
-             * See PixelElement.paint(Graphics).
-             */
-            @Override
-            public void paint(final Graphics g){
-                g.setColor(Color.BLACK);
-                g.fillRect(getX(), getY(), SQUARE_SIZE, SQUARE_SIZE);
-                if(isHead) {
-                    g.setColor(HEAD_COLOR);
-                    isHead = false;
-                }
-                else g.setColor(SEGMENT_COLOR);
-                g.fillRect(
-                        getX() + SQUARE_BUFF, getY() + SQUARE_BUFF,
-                        SQUARE_SIZE - SQUARE_BUFF, SQUARE_SIZE - SQUARE_BUFF
-                );
-            }
-
         }
 
         /*
-         * Apple
+         * A method to paint the snake. Between updates the head is drawn part of
+         * the way from the segment behind it, as far as the scheduler is through
+         * the tick, so the snake glides at any tick rate.
          */
-        private static class Apple extends PixelElement {
-
-            /*
-             * Thirds of the horizontal and vertical boundaries respectively.
-             */
-            private static final int X_THIRD = 24;
-            private static final int Y_THIRD = 22;
-
-            /*
-             * A public constructor for an Apple.
-             */
-            public Apple(final int level){
-                super(init(level));
+        private void paintSnake(final Graphics g){
+            final int last = entities.length() - 1;
+            if(last < 0) return;
+            //The body from the tail, as the spans of the ring, short of the head.
+            final int[] xs = entities.segmentXs(), ys = entities.segmentYs();
+            final int wrap = entities.wrapEnd();
+            for(int i = entities.spanStart(), end = entities.spanEnd() - (wrap == 0? 1: 0); i < end; i++) {
+                paintSquare(g, xs[i], ys[i], SEGMENT_COLOR);
             }
-
-            /*
-             * A secondary public constructor for an Apple.
-             */
-            public Apple(final Point loc) {
-                super(loc);
+            for(int i = 0; i < wrap - 1; i++) paintSquare(g, xs[i], ys[i], SEGMENT_COLOR);
+            final int hx = entities.segmentX(last), hy = entities.segmentY(last);
+            if(last == 0 || !gameStatus.isRunning()) {
+                paintSquare(g, hx, hy, HEAD_COLOR);
+                return;
             }
-
-            /*
-             * A method to initialize the randomly-generated location of the Apple.
-             * The interval of Random generation increases with each level so that
-             * Apples will be placed closer to the center early on in the game.
-             */
-            private static Point init(final int level){
-                int lowerXBound = level < X_THIRD? X_THIRD - (level << 1): 0;
-                int lowerYBound = level < Y_THIRD? Y_THIRD - (level << 1): 0;
-                int upperXBound = level < X_THIRD? X_THIRD + (level << 2): X_THIRD << 1;
-                int upperYBound = level < Y_THIRD? Y_THIRD + (level << 2): Y_THIRD << 1;
-                return new Point(
-                        (lowerXBound + rgen.nextInt(upperXBound)) << 3,
-                        (lowerYBound + rgen.nextInt(upperYBound)) << 3
-                );
-            }
-
-            /*
-             * See PixelElement.paint(Graphics).
-             */
-            @Override
-            public void paint(final Graphics g){
-                final int nx = getX();
-                final int ny = getY();
-                g.setColor(Color.BLACK);
-                g.fillRect(nx, ny, SQUARE_SIZE, SQUARE_SIZE);
-                g.setColor(APPLE_COLOR);
-                g.fillRect(
-                        nx + SQUARE_BUFF, ny + SQUARE_BUFF,
-                        SQUARE_SIZE - SQUARE_BUFF, SQUARE_SIZE - SQUARE_BUFF
-                );
+            final int nx = entities.segmentX(last - 1), ny = entities.segmentY(last - 1);
+            final int dx = hx - nx, dy = hy - ny;
+            if(Math.abs(dx) + Math.abs(dy) != SQUARE_SIZE) {
+                paintSquare(g, hx, hy, HEAD_COLOR);
+                return;
             }
-
+            final double alpha = scheduler.alpha();
+            paintSquare(g, nx + (int) (dx * alpha), ny + (int) (dy * alpha), HEAD_COLOR);
         }
 
         /*
-         * Mine
+         * A method to paint one square of the grid, at a location that may
+         * lie between cells.
          */
-        private static final class Mine extends Apple {
-
-            /*
-             * A field to mark the Mine for detonation.
-             */
-            private final boolean detonate;
-
-            /*
-             * A field to indicate the current level.
-             */
-            private final int level;
-
-            /*
-             * A public constructor for a Mine.
-             */
-            public Mine(final int level){
-                super(level);
-                this.level = level;
-                this.detonate = false;
-            }
-
-            public Mine(final Point loc, final int level) {
-                super(loc);
-                this.level = level;
-                this.detonate = true;
-            }
-
-            /*
-             * See PixelElement.paint(Graphics).
-             */
-            @Override
-            public void paint(final Graphics g){
-                final int nx = getX();
-                final int ny = getY();
-                g.setColor(Color.BLACK);
-                g.fillRect(nx, ny, SQUARE_SIZE, SQUARE_SIZE);
-                if(detonate) {
-                    final int blastSize = SQUARE_SIZE << 2;
-                    g.setColor(Color.WHITE);
-                    g.fillRect(nx - 20, ny - 20, blastSize, blastSize);
-                }
-                else {
-                    g.setColor(MINE_COLOR);
-                    g.fillRect(
-                            nx + SQUARE_BUFF, ny + SQUARE_BUFF,
-                            SQUARE_SIZE - SQUARE_BUFF, SQUARE_SIZE - SQUARE_BUFF
-                    );
-                }
-            }
-
-            /*
-             * Marks the Mine for detonation.
-             */
-            public Mine detonate(){
-                return new Mine(location, level);
-            }
-
+        private static void paintSquare(final Graphics g, final int x, final int y, final Color color){
+            g.setColor(Color.BLACK);
+            g.fillRect(x, y, SQUARE_SIZE, SQUARE_SIZE);
+            g.setColor(color);
+            g.fillRect(
+                    x + SQUARE_BUFF, y + SQUARE_BUFF,
+                    SQUARE_SIZE - SQUARE_BUFF, SQUARE_SIZE - SQUARE_BUFF
+            );
         }
 
         /*
-         * A re-creation of awt Point.
+         * A method to move the snake, updating the current location and growing
+         * a new head at this location. If the snake is over its legal size, the
+         * tail segment is dropped first.
          */
-        private static final class Point {
-
-            /*
-             * Public coordinate fields
-             */
-            public final int x;
-            public final int y;
-
-            /*
-             * Convenience constructor.
-             */
-            public Point(final int x, final int y){
-                this.x = x;
-                this.y = y;
-            }
-
-            /*
-             * A method to compare two Points.
-             */
-            @Override
-            public boolean equals(Object other){
-                if(this == other) return true;
-                if(other == null) return false;
-                if(!(other instanceof Point)) return false;
-                Point cast = (Point) other;
-                return this.x == cast.x && this.y == cast.y;
-            }
-
-            @Override
-            public int hashCode() {
-                int hash = 1;
-                hash = 31 * hash + x;
-                return 31 * hash + y;
-            }
-
-            @Override
-            public String toString(){
-                return "[" + x + ", " + y + "]";
-            }
-
+        private void advanceSnake(){
+            if(entities.length() > legalSnakeSize) entities.pop();
+            entities.push(currentLocation += Engine.offset(currentDirection));
         }
 
         /**
@@ -927,12 +1119,6 @@ public final class Game {
         public enum Direction {
 
             UP {
-                /** inheritDoc */
-                @Override
-                public Point traverse(final Point loc) {
-                    return new Point(loc.x,loc.y - SQUARE_SIZE);
-                }
-
                 @Override
                 public boolean isUp() {
                     return true;
@@ -954,12 +1140,6 @@ public final class Game {
                 }
             },
             DOWN {
-                /** inheritDoc */
-                @Override
-                public Point traverse(Point loc) {
-                    return new Point(loc.x,loc.y + SQUARE_SIZE);
-                }
-
                 @Override
                 public boolean isUp() {
                     return false;
@@ -981,12 +1161,6 @@ public final class Game {
                 }
             },
             LEFT {
-                /** inheritDoc */
-                @Override
-                public Point traverse(Point loc) {
-                    return new Point(loc.x - SQUARE_SIZE, loc.y);
-                }
-
                 @Override
                 public boolean isUp() {
                     return false;
@@ -1008,12 +1182,6 @@ public final class Game {
                 }
             },
             RIGHT {
-                /** inheritDoc */
-                @Override
-                public Point traverse(Point loc) {
-                    return new Point(loc.x + SQUARE_SIZE, loc.y);
-                }
-
                 @Override
                 public boolean isUp() {
                     return false;
@@ -1035,11 +1203,6 @@ public final class Game {
                 }
             };
 
-            /**
-             * A polymorphic approach to snake navigation on the GridPanel.
-             */
-            public abstract Point traverse(final Point loc);
-
             public abstract boolean isUp();
             public abstract boolean isDown();
             public abstract boolean isLeft();
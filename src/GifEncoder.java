@@ -0,0 +1,302 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * GIF Encoder
+ *
+ * <p>Streams an endlessly looping animated GIF of indexed-color frames to an
+ * {@code OutputStream}. Each frame is a rectangle of the canvas that is drawn
+ * over the frames before it, optionally with a transparent index for pixels
+ * that do not change, so a frame only needs to cover what moved.
+ *
+ * <p>A frame is held back until the next one arrives, so that {@link #hold(int)}
+ * can lengthen its delay when nothing changes. Memory is bounded by the
+ * encoded size of one frame plus the LZW tables.
+ */
+public final class GifEncoder implements Closeable {
+
+    /*
+     * LZW limits: codes are at most twelve bits wide.
+     */
+    private static final int MAX_BITS;
+    private static final int MAX_CODE;
+
+    /*
+     * The largest delay a frame can carry, in hundredths of a second.
+     */
+    private static final int MAX_DELAY;
+
+    /* init */
+    static {
+        MAX_BITS = 12;
+        MAX_CODE = 1 << MAX_BITS;
+        MAX_DELAY = 0xFFFF;
+    }
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+
+    /*
+     * LZW state. children[(code << minCodeSize) | pixel] is the code for the
+     * string code + pixel, or 0 if it has not been seen since the last clear.
+     */
+    private final int minCodeSize;
+    private final int clearCode;
+    private final int[] children;
+    private int codeSize;
+    private int next;
+    private int bits;
+    private int bitCount;
+    private final byte[] block;
+    private int blockLength;
+
+    /*
+     * The encoded frame that has not been written yet, and the offset of its
+     * delay field.
+     */
+    private byte[] pending;
+    private int pendingLength;
+    private int pendingDelay;
+    private int delay;
+
+    /**
+     * A public constructor for a {@code GifEncoder}. Writes the GIF header.
+     *
+     * @param out the stream to write to; it is closed by {@link #close()}
+     * @param width the width of the canvas
+     * @param height the height of the canvas
+     * @param palette the global color table as packed {@code 0xRRGGBB}, at
+     *                most 256 entries; it is padded to a power of two
+     * @throws IOException if the header cannot be written
+     */
+    public GifEncoder(final OutputStream out,
+                      final int width,
+                      final int height,
+                      final int[] palette) throws IOException {
+        if(palette.length < 1 || palette.length > 256) throw new IllegalArgumentException("Palette out of range.");
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        int colorBits = 1;
+        while(1 << colorBits < palette.length) colorBits++;
+        minCodeSize = Math.max(2, colorBits);
+        clearCode = 1 << minCodeSize;
+        children = new int[MAX_CODE << minCodeSize];
+        block = new byte[255];
+        pending = new byte[1 << 16];
+        pendingDelay = -1;
+        next = clearCode + 2;
+        final byte[] header = new byte[13 + 3 * (1 << colorBits) + 19];
+        int i = 0;
+        for(char c: "GIF89a".toCharArray()) header[i++] = (byte) c;
+        i = short16(header, i, width);
+        i = short16(header, i, height);
+        header[i++] = (byte) (0x80 | (colorBits - 1) << 4 | (colorBits - 1));
+        header[i++] = 0;
+        header[i++] = 0;
+        for(int c = 0; c < 1 << colorBits; c++) {
+            final int rgb = c < palette.length? palette[c]: 0;
+            header[i++] = (byte) (rgb >> 16);
+            header[i++] = (byte) (rgb >> 8);
+            header[i++] = (byte) rgb;
+        }
+        //Loop forever.
+        header[i++] = 0x21;
+        header[i++] = (byte) 0xFF;
+        header[i++] = 11;
+        for(char c: "NETSCAPE2.0".toCharArray()) header[i++] = (byte) c;
+        header[i++] = 3;
+        header[i++] = 1;
+        i = short16(header, i, 0);
+        header[i] = 0;
+        out.write(header);
+    }
+
+    /**
+     * Adds a frame, writing out the one before it.
+     *
+     * @param pixels the color indices of the canvas, row-major
+     * @param stride the distance between rows of {@code pixels}
+     * @param x the left edge of the rectangle to draw
+     * @param y the top edge of the rectangle to draw
+     * @param w the width of the rectangle
+     * @param h the height of the rectangle
+     * @param delay how long to show the frame, in hundredths of a second
+     * @param transparent the index of pixels that leave the canvas as it was,
+     *                    or -1 for none
+     * @throws IOException if the frame before cannot be written
+     */
+    public void frame(final byte[] pixels,
+                      final int stride,
+                      final int x,
+                      final int y,
+                      final int w,
+                      final int h,
+                      final int delay,
+                      final int transparent) throws IOException {
+        if(w < 1 || h < 1 || x < 0 || y < 0 || x + w > width || y + h > height) {
+            throw new IllegalArgumentException("Frame out of bounds.");
+        }
+        flush();
+        //Graphic control extension: leave the frame in place, maybe with a transparent index.
+        put(0x21);
+        put(0xF9);
+        put(4);
+        put(1 << 2 | (transparent < 0? 0: 1));
+        pendingDelay = pendingLength;
+        this.delay = 0;
+        put(0);
+        put(0);
+        put(transparent < 0? 0: transparent);
+        put(0);
+        //Image descriptor.
+        put(0x2C);
+        put(x);
+        put(x >> 8);
+        put(y);
+        put(y >> 8);
+        put(w);
+        put(w >> 8);
+        put(h);
+        put(h >> 8);
+        put(0);
+        compress(pixels, stride, x, y, w, h);
+        hold(delay);
+    }
+
+    /**
+     * Lengthens the delay of the last frame.
+     *
+     * @param delay the hundredths of a second to add
+     */
+    public void hold(final int delay){
+        if(pendingDelay < 0) return;
+        this.delay = Math.min(MAX_DELAY, this.delay + delay);
+        pending[pendingDelay] = (byte) this.delay;
+        pending[pendingDelay + 1] = (byte) (this.delay >> 8);
+    }
+
+    /**
+     * Writes the last frame and the GIF trailer, and closes the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            out.write(0x3B);
+        } finally {
+            out.close();
+        }
+    }
+
+    /*
+     * Writes out the pending frame.
+     */
+    private void flush() throws IOException {
+        out.write(pending, 0, pendingLength);
+        pendingLength = 0;
+        pendingDelay = -1;
+    }
+
+    /*
+     * LZW-compresses a rectangle of pixels into the pending frame.
+     */
+    private void compress(final byte[] pixels,
+                          final int stride,
+                          final int x,
+                          final int y,
+                          final int w,
+                          final int h){
+        put(minCodeSize);
+        bits = 0;
+        bitCount = 0;
+        blockLength = 0;
+        codeSize = minCodeSize + 1;
+        clear();
+        int prefix = -1;
+        for(int r = y; r < y + h; r++) {
+            final int row = r * stride + x;
+            for(int i = row; i < row + w; i++) {
+                final int p = pixels[i] & 0xFF;
+                if(prefix < 0) {
+                    prefix = p;
+                    continue;
+                }
+                final int k = prefix << minCodeSize | p;
+                final int c = children[k];
+                if(c != 0) {
+                    prefix = c;
+                    continue;
+                }
+                emit(prefix);
+                if(next < MAX_CODE) {
+                    children[k] = next;
+                    if(next++ == 1 << codeSize) codeSize++;
+                } else {
+                    clear();
+                }
+                prefix = p;
+            }
+        }
+        emit(prefix);
+        emit(clearCode + 1);
+        if(bitCount > 0) pack(bits);
+        if(blockLength > 0) writeBlock();
+        put(0);
+    }
+
+    /*
+     * Emits a clear code and forgets every string seen since the last one.
+     * Only codes below next can have children, so only their rows are wiped.
+     */
+    private void clear(){
+        emit(clearCode);
+        Arrays.fill(children, 0, Math.min(children.length, next << minCodeSize), 0);
+        codeSize = minCodeSize + 1;
+        next = clearCode + 2;
+    }
+
+    private void emit(final int code){
+        bits |= code << bitCount;
+        bitCount += codeSize;
+        while(bitCount >= 8) {
+            pack(bits);
+            bits >>>= 8;
+            bitCount -= 8;
+        }
+    }
+
+    private void pack(final int b){
+        block[blockLength++] = (byte) b;
+        if(blockLength == block.length) writeBlock();
+    }
+
+    private void writeBlock(){
+        put(blockLength);
+        ensure(blockLength);
+        System.arraycopy(block, 0, pending, pendingLength, blockLength);
+        pendingLength += blockLength;
+        blockLength = 0;
+    }
+
+    private void put(final int b){
+        ensure(1);
+        pending[pendingLength++] = (byte) b;
+    }
+
+    private void ensure(final int n){
+        if(pendingLength + n > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length << 1, pendingLength + n));
+        }
+    }
+
+    private static int short16(final byte[] b, int i, final int v){
+        b[i++] = (byte) v;
+        b[i++] = (byte) (v >> 8);
+        return i;
+    }
+
+}
@@ -0,0 +1,370 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Hamiltonian
+ *
+ * <p>A bot that cannot lose to its own body: it follows a Hamiltonian cycle
+ * over the board, so the snake only ever moves onto cells its tail has
+ * already left, and it can grow until it covers the cycle. While the snake
+ * is short it takes shortcuts toward the nearest apple, stepping ahead along
+ * the cycle when no segment of the body could still be in the cells it skips
+ * to by the time the head gets there. Once it covers half of the cycle it
+ * only follows the cycle.
+ *
+ * <p>A grid graph has a Hamiltonian cycle only if it has an even number of
+ * rows or columns. The board has {@code Engine.COLUMNS} by
+ * {@code Engine.ROWS}, both odd, so the cycle covers every cell but the
+ * bottom-left corner, where apples never spawn. Cycles are built once per
+ * board size into a next-cell table and cached on disk.
+ *
+ * <p>Mines sit on the cycle like anything else. The bot steps around them
+ * when it can, but a long snake may have no safe way around, so endurance
+ * runs are best played without mines (see {@link #main(String[])}).
+ */
+public final class Hamiltonian implements SessionHost.Pilot {
+
+    /**
+     * The fraction of the cycle beyond which the snake no longer takes
+     * shortcuts.
+     */
+    public static final double SHORTCUT_LIMIT;
+
+    /*
+     * Directions in ordinal order and the cell offsets of one step in each.
+     */
+    private static final Game.GridPanel.Direction[] DIRECTIONS;
+    private static final int[] OFFSETS;
+
+    /*
+     * Cache file format: MAGIC, width, height, then the next-cell table.
+     */
+    private static final int MAGIC;
+
+    /* init */
+    static {
+        SHORTCUT_LIMIT = 0.5;
+        DIRECTIONS = Game.GridPanel.Direction.values();
+        OFFSETS = new int[DIRECTIONS.length];
+        for(int i = 0; i < DIRECTIONS.length; i++) OFFSETS[i] = Engine.offset(DIRECTIONS[i]);
+        MAGIC = 0x534E4B43;
+    }
+
+    /*
+     * The cycle over Engine cells: each cell's position along the cycle, or
+     * -1 off the cycle.
+     */
+    private final int[] position;
+    private final int cycleLength;
+
+    /**
+     * A public constructor for a {@code Hamiltonian} bot over the board's
+     * cycle, cached under {@code ~/.snek/cycles}.
+     */
+    public Hamiltonian(){
+        this(table(Paths.get(System.getProperty("user.home"), ".snek", "cycles"),
+                Engine.COLUMNS, Engine.ROWS));
+    }
+
+    /**
+     * A public constructor for a {@code Hamiltonian} bot.
+     *
+     * @param table a next-cell table over the board, as {@link #cycle(int,
+     *              int)} builds for {@code Engine.COLUMNS} by {@code Engine.ROWS}
+     */
+    public Hamiltonian(final int[] table){
+        if(table.length != Engine.COLUMNS * Engine.ROWS) throw new IllegalArgumentException("Table is not for this board.");
+        position = new int[Engine.CELLS];
+        Arrays.fill(position, -1);
+        int start = 0;
+        while(table[start] < 0) start++;
+        int g = start, n = 0;
+        do {
+            position[toCell(g)] = n++;
+            g = table[g];
+        } while(g != start);
+        cycleLength = n;
+    }
+
+    private static int toCell(final int g){
+        return Engine.cell(g % Engine.COLUMNS, g / Engine.COLUMNS);
+    }
+
+    /**
+     * Exposes the number of cells on the cycle.
+     */
+    public int cycleLength(){
+        return cycleLength;
+    }
+
+    /**
+     * Steers toward the next cell on the cycle, or a safe shortcut.
+     */
+    @Override
+    public void steer(final Engine engine){
+        if(engine.length() == 0) return;
+        final int head = engine.head();
+        final int reverse = -Engine.offset(engine.getDirection());
+        final boolean shortcuts = engine.length() < cycleLength * SHORTCUT_LIMIT;
+        final int growth = engine.getLegalSnakeSize() - engine.length() + 1 + engine.appleCount();
+        final int target = shortcuts? nearestApple(engine, head): 1;
+        int best = -1, bestStep = 0, detour = -1, detourStep = Integer.MAX_VALUE, fallback = -1;
+        for(int m = 0; m < OFFSETS.length; m++) {
+            if(OFFSETS[m] == reverse) continue;
+            final int n = head + OFFSETS[m];
+            if(blocked(engine, n)) continue;
+            fallback = m;
+            if(position[n] < 0) continue;
+            final int step = distance(head, n);
+            if(step == 1) {
+                if(bestStep < 1) {
+                    best = m;
+                    bestStep = 1;
+                }
+                continue;
+            }
+            if(!safe(engine, n, growth)) continue;
+            if(shortcuts && step <= target && step > bestStep) {
+                best = m;
+                bestStep = step;
+            }
+            if(step < detourStep) {
+                detour = m;
+                detourStep = step;
+            }
+        }
+        final int move = best >= 0? best: detour >= 0? detour: fallback;
+        if(move >= 0) engine.steer(DIRECTIONS[move]);
+    }
+
+    /*
+     * The distance along the cycle to the nearest apple ahead of the head.
+     */
+    private int nearestApple(final Engine engine, final int head){
+        int nearest = cycleLength;
+        for(int i = 0; i < engine.appleCount(); i++) {
+            final int a = engine.apple(i);
+            if(position[a] >= 0) nearest = Math.min(nearest, distance(head, a));
+        }
+        return nearest;
+    }
+
+    /*
+     * Whether or not a cell is deadly to step onto now. The tail is not, if
+     * it leaves on this tick.
+     */
+    private static boolean blocked(final Engine engine, final int c){
+        final int bits = engine.bits(c);
+        if((bits & (Engine.WALL | Engine.MINE)) != 0) return true;
+        if((bits & Engine.BODY) == 0) return false;
+        return c != engine.segment(0) || engine.length() <= engine.getLegalSnakeSize() || (bits & Engine.BODY) > 1;
+    }
+
+    /*
+     * Whether or not the head can jump to a cell ahead on the cycle: every
+     * segment must have left before the head, following the cycle from
+     * there, reaches its cell. Segment i leaves after i + 1 tail removals,
+     * which the given growth may delay.
+     */
+    private boolean safe(final Engine engine, final int n, final int growth){
+        for(int i = 0; i < engine.length(); i++) {
+            final int s = engine.segment(i);
+            if(position[s] < 0) return false;
+            if(distance(n, s) <= i + 1 + growth) return false;
+        }
+        return true;
+    }
+
+    /*
+     * The number of steps along the cycle from one cell to another.
+     */
+    private int distance(final int from, final int to){
+        final int d = position[to] - position[from];
+        return d < 0? d + cycleLength: d;
+    }
+
+    /**
+     * Builds a Hamiltonian cycle over a grid as a next-cell table: entry
+     * {@code y * width + x} holds the index of the cell after {@code (x, y)},
+     * or -1 if the cycle leaves the cell out.
+     *
+     * <p>Rows are swept back and forth with column 0 kept as the way back
+     * up. If both sides are odd no cycle covers every cell, so the sweep
+     * stops a row short and then dips into the last row two cells at a time,
+     * leaving out only the cell at {@code (0, height - 1)}.
+     *
+     * @param width the number of columns, at least 2
+     * @param height the number of rows, at least 2
+     * @return the table
+     */
+    public static int[] cycle(final int width, final int height){
+        if(width < 2 || height < 2) throw new IllegalArgumentException("Board too small for a cycle.");
+        final int[] table = new int[width * height];
+        Arrays.fill(table, -1);
+        if(height % 2 == 0) {
+            sweep(table, width, width, height, false);
+        } else if(width % 2 == 0) {
+            sweep(table, width, height, width, true);
+        } else {
+            sweep(table, width, width, height - 1, false);
+            final int r = height - 2;
+            for(int x = 1; x < width - 1; x += 2) {
+                table[r * width + x + 1] = (r + 1) * width + x + 1;
+                table[(r + 1) * width + x + 1] = (r + 1) * width + x;
+                table[(r + 1) * width + x] = r * width + x;
+            }
+        }
+        return table;
+    }
+
+    /*
+     * Sweeps a w by h grid (h even) row by row, right then left, over columns
+     * 1 and up, and returns up column 0. If transposed, the grid's rows are
+     * the table's columns.
+     */
+    private static void sweep(final int[] table,
+                              final int width,
+                              final int w,
+                              final int h,
+                              final boolean transposed){
+        for(int y = 0; y < h; y++) {
+            if(y % 2 == 0) {
+                for(int x = 1; x < w - 1; x++) link(table, width, transposed, x, y, x + 1, y);
+                link(table, width, transposed, w - 1, y, w - 1, y + 1);
+            } else {
+                for(int x = w - 1; x > 1; x--) link(table, width, transposed, x, y, x - 1, y);
+                if(y < h - 1) link(table, width, transposed, 1, y, 1, y + 1);
+                else link(table, width, transposed, 1, y, 0, y);
+            }
+        }
+        for(int y = h - 1; y > 0; y--) link(table, width, transposed, 0, y, 0, y - 1);
+        link(table, width, transposed, 0, 0, 1, 0);
+    }
+
+    private static void link(final int[] table,
+                             final int width,
+                             final boolean transposed,
+                             final int x0, final int y0,
+                             final int x1, final int y1){
+        if(transposed) table[x0 * width + y0] = x1 * width + y1;
+        else table[y0 * width + x0] = y1 * width + x1;
+    }
+
+    /**
+     * Reads a cycle for a board size from the cache directory, building and
+     * caching it if it is missing or damaged. A cache that cannot be written
+     * is reported and skipped.
+     *
+     * @param directory the cache directory
+     * @param width the number of columns
+     * @param height the number of rows
+     * @return the next-cell table
+     */
+    public static int[] table(final Path directory, final int width, final int height){
+        final Path path = directory.resolve(width + "x" + height + ".cycle");
+        if(Files.isRegularFile(path)) {
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                if(in.readInt() == MAGIC && in.readInt() == width && in.readInt() == height) {
+                    final int[] table = new int[width * height];
+                    for(int i = 0; i < table.length; i++) table[i] = in.readInt();
+                    if(isCycle(table, width, height)) return table;
+                }
+            } catch(IOException e){
+                e.printStackTrace();
+            }
+        }
+        final int[] table = cycle(width, height);
+        try {
+            Files.createDirectories(directory);
+            final Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(width);
+                out.writeInt(height);
+                for(int v: table) out.writeInt(v);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e){
+            e.printStackTrace();
+        }
+        return table;
+    }
+
+    /*
+     * Whether or not a table is one cycle through grid neighbours that
+     * misses at most one cell.
+     */
+    private static boolean isCycle(final int[] table, final int width, final int height){
+        int start = 0, on = 0;
+        for(int v: table) if(v >= 0) on++;
+        if(on < table.length - 1) return false;
+        while(table[start] < 0) start++;
+        int g = start, n = 0;
+        do {
+            final int t = table[g];
+            if(t < 0 || t >= table.length || Math.abs(t % width - g % width) + Math.abs(t / width - g / width) != 1) return false;
+            g = t;
+            if(++n > on) return false;
+        } while(g != start);
+        return n == on;
+    }
+
+    /**
+     * Plays one game under the {@code Hamiltonian} bot, without mines, for
+     * up to {@code [ticks]} ticks from seed {@code [seed]}, reporting the
+     * snake's length as it grows and the cost of a tick and a decision. With
+     * {@code [gif]}, the game is also recorded, to stress the rendering path
+     * with a board-filling snake.
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final int ticks = args.length > 0? Integer.parseInt(args[0]): 5_000_000;
+        final long seed = args.length > 1? Long.parseLong(args[1]): 0;
+        final Recorder recorder = args.length > 2?
+                new Recorder(Paths.get(args[2]), Recorder.DEFAULT_TICK_MILLIS, Recorder.DEFAULT_BUFFERED_FRAMES): null;
+        long start = System.nanoTime();
+        final Hamiltonian pilot = new Hamiltonian();
+        System.out.printf("Cycle of %d cells ready in %.1fms%n", pilot.cycleLength(), (System.nanoTime() - start) / 1e6);
+        final Rules d = Rules.DEFAULT;
+        final Engine engine = new Engine(seed, new Rules(
+                d.snakeSize, d.appleQuantity, d.appleIncrement, 0, 0,
+                d.mineIntroductionLevel, d.tailBiteQuantity, d.score, d.scoreIncrement, d.spawnWidening
+        ));
+        long decide = 0, tick = 0;
+        int played = 0, report = pilot.cycleLength() / 10;
+        start = System.nanoTime();
+        if(recorder != null) {
+            try {
+                played = recorder.play(engine, pilot, ticks);
+            } finally {
+                recorder.close();
+            }
+        } else {
+            do {
+                final long t0 = System.nanoTime();
+                pilot.steer(engine);
+                final long t1 = System.nanoTime();
+                if(!engine.tick()) break;
+                tick += System.nanoTime() - t1;
+                decide += t1 - t0;
+                played++;
+                if(engine.length() >= report) {
+                    System.out.printf("  length %d at tick %d, level %d%n", engine.length(), played, engine.getLevel());
+                    report += pilot.cycleLength() / 10;
+                }
+            } while(played < ticks);
+        }
+        System.out.printf("%d ticks in %.1fs: length %d of %d, level %d, %s; %.0fns/tick, %.0fns/decision%n",
+                played, (System.nanoTime() - start) / 1e9, engine.length(), pilot.cycleLength(), engine.getLevel(),
+                engine.getGameStatus().isRunning()? "alive": "died (" + engine.getCause().title() + ")",
+                tick / (double) played, decide / (double) played);
+    }
+
+}
@@ -0,0 +1,358 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Journal
+ *
+ * <p>The events of a game as a stream: an {@code Engine.Observer} that
+ * writes apples eaten, tail-bites, detonations, level starts and deaths,
+ * each stamped with its tick, into a ring buffer that any number of
+ * {@link Consumer}s read at their own pace, on threads of their own, in the
+ * manner of the Disruptor. Analytics, a HUD, a recorder and metrics can each
+ * follow a game without knowing about one another.
+ *
+ * <p>The ticking thread is the only writer and never waits: it claims the
+ * next slot, fills it and publishes it, overwriting whatever was there. A
+ * consumer that falls more than the ring's capacity behind does not hold the
+ * game back; it finds its next events overwritten, skips to the oldest event
+ * still in the ring and counts what it missed as dropped. Events are held as
+ * parallel primitive arrays, so publishing allocates nothing.
+ */
+public final class Journal implements Engine.Observer {
+
+    /**
+     * The default number of events held.
+     */
+    public static final int DEFAULT_CAPACITY;
+
+    /*
+     * Kinds by ordinal, and causes of death by ordinal.
+     */
+    private static final Kind[] KINDS;
+    private static final Engine.Cause[] CAUSES;
+
+    /* init */
+    static {
+        DEFAULT_CAPACITY = 1 << 12;
+        KINDS = Kind.values();
+        CAUSES = Engine.Cause.values();
+    }
+
+    /**
+     * Kind
+     *
+     * <p>The kinds of event, and what an event's value is for each.
+     */
+    public enum Kind {
+        /** The value is the cell of the apple. */
+        APPLE_EATEN,
+        /** The value is the number of tail-bites remaining. */
+        TAIL_BITTEN,
+        /** The value is the cell of the mine. */
+        MINE_DETONATED,
+        /** The value is the level. */
+        LEVEL_STARTED,
+        /** The value is the ordinal of the {@code Engine.Cause}. */
+        DIED
+    }
+
+    /**
+     * Listener
+     *
+     * <p>Receives the events a {@link Consumer} reads, on the consumer's
+     * thread.
+     */
+    public interface Listener {
+        default void appleEaten(int tick, int cell) { }
+        default void tailBitten(int tick, int remaining) { }
+        default void mineDetonated(int tick, int cell) { }
+        default void levelStarted(int tick, int level) { }
+        default void died(int tick, Engine.Cause cause) { }
+        /**
+         * Called when the consumer has fallen behind and events were
+         * overwritten before it read them.
+         *
+         * @param count the number of events missed this time
+         */
+        default void dropped(long count) { }
+    }
+
+    private final int capacity;
+    private final int mask;
+
+    /*
+     * The ring: slot (sequence & mask) holds an event's kind, tick and value.
+     */
+    private final byte[] kinds;
+    private final int[] ticks;
+    private final int[] values;
+
+    /*
+     * The sequence of the slot being written, and of the last event
+     * readable. claimed runs ahead of published while a slot is written, so
+     * a reader can tell if the slot it read was being overwritten.
+     */
+    private volatile long claimed;
+    private volatile long published;
+
+    /*
+     * The writer's own copy of published.
+     */
+    private long sequence;
+
+    /*
+     * The Engine whose events are journaled, for their ticks.
+     */
+    private Engine engine;
+
+    /**
+     * A public constructor for a {@code Journal}.
+     *
+     * @param capacity the number of events held, a power of two
+     */
+    public Journal(final int capacity){
+        if(capacity < 1 || Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity must be a power of two.");
+        this.capacity = capacity;
+        mask = capacity - 1;
+        kinds = new byte[capacity];
+        ticks = new int[capacity];
+        values = new int[capacity];
+        claimed = published = sequence = -1;
+    }
+
+    /**
+     * Journals an {@code Engine}'s events, alongside its other
+     * {@code Observer}s.
+     *
+     * @param engine the engine
+     */
+    public void attach(final Engine engine){
+        this.engine = engine;
+        engine.addObserver(this);
+    }
+
+    /**
+     * Adds a consumer that reads from the next event published on.
+     *
+     * @return the consumer
+     */
+    public Consumer subscribe(){
+        return new Consumer(published + 1);
+    }
+
+    /**
+     * Exposes the number of events published.
+     */
+    public long published(){
+        return published + 1;
+    }
+
+    /*
+     * Writes an event. Only the ticking thread writes.
+     */
+    private void publish(final Kind kind, final int value){
+        final long n = ++sequence;
+        claimed = n;
+        //Readers must see the claim before any of the slot's new contents.
+        VarHandle.storeStoreFence();
+        final int i = (int) n & mask;
+        kinds[i] = (byte) kind.ordinal();
+        ticks[i] = engine == null? 0: engine.getTick();
+        values[i] = value;
+        published = n;
+    }
+
+    @Override
+    public void appleEaten(final int cell){
+        publish(Kind.APPLE_EATEN, cell);
+    }
+
+    @Override
+    public void tailBitten(final int remaining){
+        publish(Kind.TAIL_BITTEN, remaining);
+    }
+
+    @Override
+    public void mineDetonated(final int cell){
+        publish(Kind.MINE_DETONATED, cell);
+    }
+
+    @Override
+    public void levelStarted(final int level){
+        publish(Kind.LEVEL_STARTED, level);
+    }
+
+    @Override
+    public void died(final Engine.Cause cause){
+        publish(Kind.DIED, cause.ordinal());
+    }
+
+    /**
+     * Consumer
+     *
+     * <p>A reader of the {@code Journal} with a position of its own. A
+     * consumer is read by one thread at a time.
+     */
+    public final class Consumer {
+
+        private long next;
+        private long read;
+        private long dropped;
+
+        private Consumer(final long next){
+            this.next = next;
+        }
+
+        /**
+         * Reads the events published since the last poll, up to a limit,
+         * handing each to a {@code Listener}.
+         *
+         * @param listener the listener
+         * @param max the most events to read
+         * @return the number of events read
+         */
+        public int poll(final Listener listener, final int max){
+            final long available = published;
+            int n = 0;
+            while(next <= available && n < max) {
+                if(available - next >= capacity) {
+                    skip(listener, available - capacity + 1);
+                    continue;
+                }
+                final int i = (int) next & mask;
+                final int kind = kinds[i], tick = ticks[i], value = values[i];
+                //The claim must be read after the slot, to see a write that overlapped the read.
+                VarHandle.loadLoadFence();
+                final long overwriting = claimed - capacity;
+                if(overwriting >= next) {
+                    skip(listener, overwriting + 1);
+                    continue;
+                }
+                next++;
+                read++;
+                n++;
+                switch(KINDS[kind]) {
+                    case APPLE_EATEN: listener.appleEaten(tick, value); break;
+                    case TAIL_BITTEN: listener.tailBitten(tick, value); break;
+                    case MINE_DETONATED: listener.mineDetonated(tick, value); break;
+                    case LEVEL_STARTED: listener.levelStarted(tick, value); break;
+                    default: listener.died(tick, CAUSES[value]);
+                }
+            }
+            return n;
+        }
+
+        /*
+         * Gives up on the events before a sequence.
+         */
+        private void skip(final Listener listener, final long to){
+            final long missed = to - next;
+            next = to;
+            dropped += missed;
+            listener.dropped(missed);
+        }
+
+        /**
+         * Exposes the number of events this consumer has read.
+         */
+        public long read(){
+            return read;
+        }
+
+        /**
+         * Exposes the number of events this consumer missed by falling
+         * behind.
+         */
+        public long dropped(){
+            return dropped;
+        }
+
+        /**
+         * Exposes the number of events published that this consumer has
+         * yet to read.
+         */
+        public long lag(){
+            return published + 1 - next;
+        }
+
+    }
+
+    /**
+     * Plays {@code [ticks]} ticks under the {@code Autopilot} with a journal
+     * of {@code [capacity]} events read by three consumers on threads of
+     * their own: a tally, a HUD and a slow consumer. Reports what each saw
+     * and the cost to the ticking thread against a game with no observer.
+     * The capacity defaults to 64 events, few enough that the slow consumer
+     * falls behind and drops some; at {@code DEFAULT_CAPACITY} it keeps up.
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        final int ticks = args.length > 0? Integer.parseInt(args[0]): 200_000;
+        final int capacity = args.length > 1? Integer.parseInt(args[1]): 64;
+        final Autopilot pilot = new Autopilot();
+        //Without a journal.
+        Engine engine = new Engine(0);
+        long start = System.nanoTime();
+        for(int t = 0, games = 0; t < ticks; t++) {
+            pilot.steer(engine);
+            if(!engine.tick()) engine.reset(++games);
+        }
+        final double plain = (System.nanoTime() - start) / (double) ticks;
+        //With one.
+        final Journal journal = new Journal(capacity);
+        engine = new Engine(0);
+        journal.attach(engine);
+        final long[] tally = new long[Kind.values().length];
+        final int[] hud = new int[2];
+        final Listener tallying = new Listener() {
+            @Override public void appleEaten(int tick, int cell) { tally[Kind.APPLE_EATEN.ordinal()]++; }
+            @Override public void tailBitten(int tick, int remaining) { tally[Kind.TAIL_BITTEN.ordinal()]++; }
+            @Override public void mineDetonated(int tick, int cell) { tally[Kind.MINE_DETONATED.ordinal()]++; }
+            @Override public void levelStarted(int tick, int level) { tally[Kind.LEVEL_STARTED.ordinal()]++; }
+            @Override public void died(int tick, Engine.Cause cause) { tally[Kind.DIED.ordinal()]++; }
+        };
+        final Listener heads = new Listener() {
+            @Override public void levelStarted(int tick, int level) { hud[0] = Math.max(hud[0], level); }
+            @Override public void tailBitten(int tick, int remaining) { hud[1] = remaining; }
+        };
+        final Listener slow = new Listener() {
+            @Override public void appleEaten(int tick, int cell) { LockSupport.parkNanos(200_000); }
+        };
+        final Consumer[] consumers = {journal.subscribe(), journal.subscribe(), journal.subscribe()};
+        final Listener[] listeners = {tallying, heads, slow};
+        final String[] names = {"tally", "hud", "slow"};
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final Thread[] threads = new Thread[consumers.length];
+        for(int c = 0; c < consumers.length; c++) {
+            final Consumer consumer = consumers[c];
+            final Listener listener = listeners[c];
+            threads[c] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while(running.get()) {
+                        if(consumer.poll(listener, 256) == 0) LockSupport.parkNanos(100_000);
+                    }
+                    while(consumer.poll(listener, Integer.MAX_VALUE) > 0) { }
+                }
+            }, "SneK-journal-" + names[c]);
+            threads[c].start();
+        }
+        start = System.nanoTime();
+        for(int t = 0, games = 0; t < ticks; t++) {
+            pilot.steer(engine);
+            if(!engine.tick()) engine.reset(++games);
+        }
+        final double journaled = (System.nanoTime() - start) / (double) ticks;
+        running.set(false);
+        for(Thread t: threads) t.join();
+        System.out.printf("%d ticks: %.0fns/tick without a journal, %.0fns/tick with one; %d events published%n",
+                ticks, plain, journaled, journal.published());
+        for(int c = 0; c < consumers.length; c++) {
+            System.out.printf("  %-6s read %d, dropped %d%n", names[c], consumers[c].read(), consumers[c].dropped());
+        }
+        final StringBuilder counts = new StringBuilder();
+        for(Kind k: Kind.values()) counts.append(String.format(" %s=%d", k, tally[k.ordinal()]));
+        System.out.printf("  tally:%s; hud saw level %d%n", counts, hud[0]);
+    }
+
+}
@@ -0,0 +1,549 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Leaderboard
+ *
+ * <p>A local high-score store. Every result is appended to a log of fixed
+ * size, checksummed records. Results are staged in memory and written by one
+ * writer thread, which writes and forces all staged records in one go
+ * (group commit), so the cost of a write is shared by every result in the
+ * batch.
+ *
+ * <p>The writer keeps a top-K min-heap and the best result per level, and
+ * publishes both to a memory-mapped index file after every batch. Queries
+ * read the index under a sequence lock, so they never wait on the writer
+ * and cost a copy of the records asked for. Once the log
+ * grows past a threshold it is compacted down to the records the index
+ * still refers to.
+ */
+public final class Leaderboard implements AutoCloseable {
+
+    /**
+     * Store constants.
+     */
+    public static final int DEFAULT_CAPACITY;
+    public static final int MAX_LEVELS;
+    public static final long DEFAULT_COMPACTION_THRESHOLD;
+
+    /*
+     * Record layout: id, time, score, level, cause, ticks and a CRC32C of
+     * the preceding bytes.
+     */
+    private static final int RECORD_SIZE;
+    private static final int ID;
+    private static final int TIME;
+    private static final int SCORE;
+    private static final int LEVEL;
+    private static final int CAUSE;
+    private static final int TICKS;
+    private static final int CHECKSUM;
+
+    /*
+     * Index layout: magic, sequence lock, counts, then the top-K records in
+     * order followed by the best record of each level.
+     */
+    private static final int MAGIC;
+    private static final int VERSION;
+    private static final int TOP_COUNT;
+    private static final int HEADER_SIZE;
+
+    /*
+     * The most records staged before producers have to wait.
+     */
+    private static final int STAGING_RECORDS;
+
+    private static final VarHandle INTS;
+
+    /* init */
+    static {
+        DEFAULT_CAPACITY = 100;
+        MAX_LEVELS = 256;
+        DEFAULT_COMPACTION_THRESHOLD = 64L << 20;
+        RECORD_SIZE = 32;
+        ID = 0;
+        TIME = 8;
+        SCORE = 16;
+        LEVEL = 20;
+        CAUSE = 22;
+        TICKS = 24;
+        CHECKSUM = 28;
+        MAGIC = 0x536E654B;
+        VERSION = 4;
+        TOP_COUNT = 8;
+        HEADER_SIZE = 16;
+        STAGING_RECORDS = 1 << 16;
+        INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Score
+     *
+     * <p>One recorded result.
+     */
+    public static final class Score {
+        public final long id;
+        public final long time;
+        public final int score;
+        public final int level;
+        public final Engine.Cause cause;
+        public final int ticks;
+
+        private Score(final ByteBuffer b, final int at){
+            id = b.getLong(at + ID);
+            time = b.getLong(at + TIME);
+            score = b.getInt(at + SCORE);
+            level = b.getShort(at + LEVEL);
+            final int c = b.get(at + CAUSE);
+            cause = c < 0? null: Engine.Cause.values()[c];
+            ticks = b.getInt(at + TICKS);
+        }
+
+        @Override
+        public String toString(){
+            return String.format("#%d %d (level %d, %s)", id, score, level,
+                    cause == null? "quit": cause.title());
+        }
+    }
+
+    private final Path logPath;
+    private final Path indexPath;
+    private final int capacity;
+    private final long compactionThreshold;
+    private final boolean durable;
+    private FileChannel log;
+
+    /*
+     * Staging. Producers fill one buffer while the writer drains the other.
+     */
+    private ByteBuffer filling;
+    private ByteBuffer draining;
+    private long nextId;
+    private long written;
+    private boolean open;
+    private final Thread writer;
+
+    /*
+     * Writer state: the top-K as a min-heap of record copies, and the best
+     * record of each level.
+     */
+    private final ByteBuffer heap;
+    private int heapSize;
+    private final ByteBuffer bests;
+    private final ByteBuffer scratch;
+    private final CRC32C crc;
+
+    /*
+     * The published index.
+     */
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer index;
+
+    /**
+     * Opens the default leaderboard in the user's home directory.
+     */
+    public static Leaderboard openDefault() throws IOException {
+        final Path dir = Paths.get(System.getProperty("user.home"), ".snek");
+        Files.createDirectories(dir);
+        return new Leaderboard(dir.resolve("scores.log"), DEFAULT_CAPACITY, DEFAULT_COMPACTION_THRESHOLD, true);
+    }
+
+    /**
+     * A public constructor for a {@code Leaderboard}. The log is replayed to
+     * rebuild the index.
+     *
+     * @param logPath the log file; the index is kept next to it
+     * @param capacity the number of top scores kept
+     * @param compactionThreshold the log size that triggers a compaction
+     * @param durable whether each batch is forced to disk before it counts
+     *                as written
+     */
+    public Leaderboard(final Path logPath, final int capacity,
+                       final long compactionThreshold, final boolean durable) throws IOException {
+        this.logPath = logPath;
+        this.indexPath = logPath.resolveSibling(logPath.getFileName() + ".idx");
+        this.capacity = capacity;
+        this.compactionThreshold = compactionThreshold;
+        this.durable = durable;
+        filling = ByteBuffer.allocateDirect(STAGING_RECORDS * RECORD_SIZE);
+        draining = ByteBuffer.allocateDirect(STAGING_RECORDS * RECORD_SIZE);
+        heap = ByteBuffer.allocate(capacity * RECORD_SIZE);
+        bests = ByteBuffer.allocate(MAX_LEVELS * RECORD_SIZE);
+        scratch = ByteBuffer.allocate(RECORD_SIZE);
+        crc = new CRC32C();
+        indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) (capacity + MAX_LEVELS) * RECORD_SIZE);
+        //A crash mid-publish leaves the sequence lock odd; round it up to even.
+        final int version = (int) INTS.getVolatile(index, VERSION);
+        INTS.setRelease(index, VERSION, version + (version & 1));
+        log = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay();
+        publish();
+        open = true;
+        writer = new Thread(this::write, "SneK-leaderboard");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records a result. Returns once the result is staged; it is written by
+     * the next batch.
+     *
+     * @param score the final score
+     * @param level the level reached
+     * @param cause why the game ended, or null if it was called off
+     * @param ticks how long the game lasted
+     * @return the id of the result
+     */
+    public long record(final int score, final int level, final Engine.Cause cause, final int ticks){
+        synchronized(this) {
+            while(open && !filling.hasRemaining()) waitQuietly();
+            if(!open) throw new IllegalStateException("Leaderboard is closed.");
+            final long id = nextId++;
+            final int at = filling.position();
+            filling.putLong(id).putLong(System.currentTimeMillis()).putInt(score)
+                    .putShort((short) Math.min(level, Short.MAX_VALUE))
+                    .put((byte) (cause == null? -1: cause.ordinal())).put((byte) 0)
+                    .putInt(ticks).putInt(0);
+            filling.putInt(at + CHECKSUM, checksum(filling, at));
+            if(filling.position() == RECORD_SIZE) notifyAll();
+            return id;
+        }
+    }
+
+    /**
+     * Waits until every result recorded so far has been written.
+     */
+    public synchronized void flush(){
+        final long target = nextId;
+        while(open && written < target) waitQuietly();
+    }
+
+    /**
+     * Reads the top scores from the index.
+     *
+     * @param n the most scores to return
+     * @return the scores, best first
+     */
+    public List<Score> top(final int n){
+        while(true) {
+            final int version = (int) INTS.getAcquire(index, VERSION);
+            if((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            final int count = Math.min(n, index.getInt(TOP_COUNT));
+            final List<Score> scores = new ArrayList<>(count);
+            for(int i = 0; i < count; i++) scores.add(new Score(index, HEADER_SIZE + i * RECORD_SIZE));
+            VarHandle.loadLoadFence();
+            if((int) INTS.getAcquire(index, VERSION) == version) return scores;
+        }
+    }
+
+    /**
+     * Reads the best score of a level from the index.
+     *
+     * @param level the level
+     * @return the best score, or null if no game has ended on that level
+     */
+    public Score best(final int level){
+        if(level < 0 || level >= MAX_LEVELS) return null;
+        final int at = HEADER_SIZE + (capacity + level) * RECORD_SIZE;
+        while(true) {
+            final int version = (int) INTS.getAcquire(index, VERSION);
+            if((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            final Score s = index.getInt(at + CHECKSUM) == 0? null: new Score(index, at);
+            VarHandle.loadLoadFence();
+            if((int) INTS.getAcquire(index, VERSION) == version) return s;
+        }
+    }
+
+    /**
+     * Writes what is staged and stops the writer.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized(this) {
+            open = false;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        index.force();
+        indexChannel.close();
+    }
+
+    /*
+     * The writer thread: swaps the staging buffers, appends the drained
+     * batch, folds it into the index and publishes.
+     */
+    private void write(){
+        try {
+            while(true) {
+                synchronized(this) {
+                    while(open && filling.position() == 0) waitQuietly();
+                    if(filling.position() == 0) return;
+                    final ByteBuffer b = filling;
+                    filling = draining;
+                    draining = b;
+                    notifyAll();
+                }
+                draining.flip();
+                final int records = draining.remaining() / RECORD_SIZE;
+                final long end = log.size();
+                while(draining.hasRemaining()) log.write(draining, end + draining.position());
+                if(durable) log.force(false);
+                boolean changed = false;
+                for(int i = 0; i < records; i++) changed |= admit(draining, i * RECORD_SIZE);
+                draining.clear();
+                if(changed) publish();
+                if(log.size() > compactionThreshold) compact();
+                synchronized(this) {
+                    written += records;
+                    notifyAll();
+                }
+            }
+        } catch(IOException e) {
+            synchronized(this) {
+                open = false;
+                notifyAll();
+            }
+            throw new IllegalStateException("Leaderboard log failed.", e);
+        }
+    }
+
+    /*
+     * Folds one record into the top-K heap and the level bests.
+     */
+    private boolean admit(final ByteBuffer b, final int at){
+        boolean changed = false;
+        final int level = b.getShort(at + LEVEL);
+        if(level >= 0 && level < MAX_LEVELS) {
+            final int slot = level * RECORD_SIZE;
+            if(bests.getInt(slot + CHECKSUM) == 0 || beats(b, at, bests, slot)) {
+                copy(b, at, bests, slot);
+                changed = true;
+            }
+        }
+        if(heapSize < capacity) {
+            copy(b, at, heap, heapSize * RECORD_SIZE);
+            siftUp(heapSize++);
+            return true;
+        }
+        if(capacity == 0 || !beats(b, at, heap, 0)) return changed;
+        copy(b, at, heap, 0);
+        siftDown(0);
+        return true;
+    }
+
+    /*
+     * Whether the record at a beats the record at b: higher scores win, and
+     * earlier results win ties.
+     */
+    private static boolean beats(final ByteBuffer x, final int a, final ByteBuffer y, final int b){
+        final int sa = x.getInt(a + SCORE), sb = y.getInt(b + SCORE);
+        return sa != sb? sa > sb: x.getLong(a + ID) < y.getLong(b + ID);
+    }
+
+    private void siftUp(int i){
+        while(i > 0) {
+            final int parent = (i - 1) >> 1;
+            if(!beats(heap, parent * RECORD_SIZE, heap, i * RECORD_SIZE)) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i){
+        while(true) {
+            final int l = (i << 1) + 1, r = l + 1;
+            int least = i;
+            if(l < heapSize && beats(heap, least * RECORD_SIZE, heap, l * RECORD_SIZE)) least = l;
+            if(r < heapSize && beats(heap, least * RECORD_SIZE, heap, r * RECORD_SIZE)) least = r;
+            if(least == i) return;
+            swap(i, least);
+            i = least;
+        }
+    }
+
+    private void swap(final int i, final int j){
+        copy(heap, i * RECORD_SIZE, scratch, 0);
+        copy(heap, j * RECORD_SIZE, heap, i * RECORD_SIZE);
+        copy(scratch, 0, heap, j * RECORD_SIZE);
+    }
+
+    private static void copy(final ByteBuffer from, final int a, final ByteBuffer to, final int b){
+        to.putLong(b, from.getLong(a));
+        to.putLong(b + 8, from.getLong(a + 8));
+        to.putLong(b + 16, from.getLong(a + 16));
+        to.putLong(b + 24, from.getLong(a + 24));
+    }
+
+    /*
+     * Writes the heap, sorted, and the level bests into the index.
+     */
+    private void publish(){
+        final Integer[] order = new Integer[heapSize];
+        for(int i = 0; i < heapSize; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> beats(heap, a * RECORD_SIZE, heap, b * RECORD_SIZE)? -1:
+                beats(heap, b * RECORD_SIZE, heap, a * RECORD_SIZE)? 1: 0);
+        final int version = (int) INTS.getVolatile(index, VERSION);
+        INTS.setVolatile(index, VERSION, version + 1);
+        index.putInt(0, MAGIC);
+        index.putInt(TOP_COUNT, heapSize);
+        index.putInt(TOP_COUNT + 4, MAX_LEVELS);
+        for(int i = 0; i < heapSize; i++) copy(heap, order[i] * RECORD_SIZE, index, HEADER_SIZE + i * RECORD_SIZE);
+        for(int i = 0; i < MAX_LEVELS; i++) {
+            copy(bests, i * RECORD_SIZE, index, HEADER_SIZE + (capacity + i) * RECORD_SIZE);
+        }
+        INTS.setRelease(index, VERSION, version + 2);
+    }
+
+    /*
+     * Rebuilds the heap and level bests from the log, dropping a torn or
+     * corrupt tail.
+     */
+    private void replay() throws IOException {
+        final ByteBuffer b = ByteBuffer.allocateDirect(STAGING_RECORDS * RECORD_SIZE);
+        long position = 0;
+        read:
+        while(true) {
+            b.clear();
+            final int n = log.read(b, position);
+            if(n <= 0) break;
+            b.flip();
+            for(int at = 0; at + RECORD_SIZE <= b.limit(); at += RECORD_SIZE) {
+                if(b.getInt(at + CHECKSUM) != checksum(b, at)) break read;
+                admit(b, at);
+                nextId = Math.max(nextId, b.getLong(at + ID) + 1);
+                position += RECORD_SIZE;
+            }
+            if(b.limit() < b.capacity()) break;
+        }
+        if(log.size() != position) log.truncate(position);
+        written = nextId;
+    }
+
+    /*
+     * Rewrites the log with only the records the index refers to, then
+     * swaps it in.
+     */
+    private void compact() throws IOException {
+        final List<Long> kept = new ArrayList<>();
+        final ByteBuffer out = ByteBuffer.allocate((heapSize + MAX_LEVELS) * RECORD_SIZE);
+        final List<Integer> slots = new ArrayList<>();
+        for(int i = 0; i < heapSize; i++) slots.add(i);
+        for(int i = 0; i < MAX_LEVELS; i++) if(bests.getInt(i * RECORD_SIZE + CHECKSUM) != 0) slots.add(-1 - i);
+        slots.sort((a, b) -> Long.compare(id(a), id(b)));
+        for(int s: slots) {
+            final long id = id(s);
+            if(!kept.isEmpty() && kept.get(kept.size() - 1) == id) continue;
+            kept.add(id);
+            copy(s >= 0? heap: bests, (s >= 0? s: -1 - s) * RECORD_SIZE, out, out.position());
+            out.position(out.position() + RECORD_SIZE);
+        }
+        out.flip();
+        final Path temporary = logPath.resolveSibling(logPath.getFileName() + ".compact");
+        try(FileChannel c = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while(out.hasRemaining()) c.write(out);
+            c.force(true);
+        }
+        log.close();
+        Files.move(temporary, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private long id(final int slot){
+        return slot >= 0? heap.getLong(slot * RECORD_SIZE + ID): bests.getLong((-1 - slot) * RECORD_SIZE + ID);
+    }
+
+    /*
+     * A CRC32C of a record's first 28 bytes, never 0 so that 0 can mean
+     * "empty" in the index.
+     */
+    private int checksum(final ByteBuffer b, final int at){
+        crc.reset();
+        for(int i = 0; i < CHECKSUM; i += 4) {
+            final int v = b.getInt(at + i);
+            crc.update(v >>> 24);
+            crc.update(v >>> 16);
+            crc.update(v >>> 8);
+            crc.update(v);
+        }
+        final int c = (int) crc.getValue();
+        return c == 0? 1: c;
+    }
+
+    private void waitQuietly(){
+        try {
+            wait();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Records {@code [results]} random results from {@code [threads]}
+     * threads into a scratch leaderboard, then times top-100 queries.
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final int results = args.length > 0? Integer.parseInt(args[0]): 2_000_000;
+        final int threads = args.length > 1? Integer.parseInt(args[1]): 4;
+        final Path dir = Files.createTempDirectory("snek-leaderboard");
+        try(Leaderboard board = new Leaderboard(dir.resolve("scores.log"), DEFAULT_CAPACITY, 16L << 20, true)) {
+            final Thread[] producers = new Thread[threads];
+            final long start = System.nanoTime();
+            for(int t = 0; t < threads; t++) {
+                final int seed = t;
+                producers[t] = new Thread(() -> {
+                    final java.util.SplittableRandom r = new java.util.SplittableRandom(seed);
+                    for(int i = 0; i < results / threads; i++) {
+                        final int level = 1 + r.nextInt(40);
+                        board.record(Engine.DEFAULT_SCORE + Engine.SCORE_INCREMENT * r.nextInt(level * level),
+                                level, Engine.Cause.values()[r.nextInt(3)], r.nextInt(100_000));
+                    }
+                });
+                producers[t].start();
+            }
+            for(Thread p: producers) p.join();
+            board.flush();
+            final double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d results in %.2fs: %.0f results/s, log %d bytes after compaction%n",
+                    results, seconds, results / seconds, Files.size(dir.resolve("scores.log")));
+            List<Score> top = Collections.emptyList();
+            final int queries = 100_000;
+            final long q = System.nanoTime();
+            for(int i = 0; i < queries; i++) top = board.top(100);
+            System.out.printf("top-100 query: %.2fus; best %s, level 10 best %s%n",
+                    (System.nanoTime() - q) / 1e3 / queries, top.get(0), board.best(10));
+        }
+    }
+
+}
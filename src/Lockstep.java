@@ -0,0 +1,331 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Lockstep
+ *
+ * <p>A deterministic simulation of several players, each on an
+ * {@code Engine} of its own seeded alike, that advances all of them one tick
+ * at a time. Input is scheduled for a tick rather than applied when it
+ * arrives: a player's turn is stamped with the tick it was made on plus an
+ * input delay, and applied at the start of that tick. A player with no input
+ * for a tick is predicted to keep going the way it was.
+ *
+ * <p>Input that arrives for a tick already simulated rolls the simulation
+ * back: the players are restored from the snapshot taken at the start of
+ * that tick and the ticks since are simulated again with the input in place,
+ * all before the next tick. Snapshots are {@link Engine#copyFrom(Engine)
+ * copies} into a ring of preallocated {@code Engine}s, so neither snapshots
+ * nor re-simulation allocate, and re-simulating a tick costs about as much
+ * as the tick itself. Input later than {@link #MAX_ROLLBACK} ticks is applied
+ * at the oldest tick that can still be restored.
+ *
+ * <p>The depth of rollbacks and the time spent re-simulating are kept as
+ * metrics.
+ */
+public final class Lockstep {
+
+    /**
+     * The default delay between a turn and the tick it applies on, in ticks.
+     */
+    public static final int DEFAULT_INPUT_DELAY;
+
+    /**
+     * The furthest back a rollback goes, in ticks.
+     */
+    public static final int MAX_ROLLBACK;
+
+    /*
+     * The number of ticks of input and tick start times kept, a power of two
+     * larger than MAX_ROLLBACK plus any input delay.
+     */
+    private static final int WINDOW;
+    private static final int WINDOW_MASK;
+
+    /*
+     * Directions by ordinal, as input is stored.
+     */
+    private static final Game.GridPanel.Direction[] DIRECTIONS;
+
+    /* init */
+    static {
+        DEFAULT_INPUT_DELAY = 2;
+        MAX_ROLLBACK = 8;
+        WINDOW = 64;
+        WINDOW_MASK = WINDOW - 1;
+        DIRECTIONS = Game.GridPanel.Direction.values();
+    }
+
+    /*
+     * The players, as of the start of the next tick, and their snapshots:
+     * snapshots[t % (MAX_ROLLBACK + 1)] holds them as of the start of tick t.
+     */
+    private final Engine[] players;
+    private final Engine[][] snapshots;
+
+    /*
+     * Input by tick: input[t & WINDOW_MASK][p] is one more than the ordinal
+     * of player p's direction for tick t, or 0 for none.
+     */
+    private final byte[][] input;
+
+    /*
+     * When each tick started, in epoch milliseconds, for stamping input.
+     */
+    private final long[] started;
+
+    private final int inputDelay;
+
+    /*
+     * The next tick to simulate, and the earliest tick that late input has
+     * changed, or MAX_VALUE if none has.
+     */
+    private int tick;
+    private int dirtyFrom;
+
+    /*
+     * Metrics.
+     */
+    private long rollbacks;
+    private int lastRollbackDepth;
+    private int maxRollbackDepth;
+    private long resimulatedTicks;
+    private long resimulationNanos;
+
+    /**
+     * A public constructor for a {@code Lockstep} simulation.
+     *
+     * @param playerCount the number of players
+     * @param seed the seed all players' apples and mines are placed from
+     * @param rules the progression constants to play by
+     * @param inputDelay the delay between a turn and the tick it applies
+     *                   on, in ticks
+     */
+    public Lockstep(final int playerCount, final long seed, final Rules rules, final int inputDelay){
+        if(playerCount < 1) throw new IllegalArgumentException("No players.");
+        if(inputDelay < 0 || inputDelay + MAX_ROLLBACK + 2 > WINDOW) throw new IllegalArgumentException("Input delay out of range.");
+        this.inputDelay = inputDelay;
+        players = new Engine[playerCount];
+        snapshots = new Engine[MAX_ROLLBACK + 1][playerCount];
+        for(int p = 0; p < playerCount; p++) {
+            players[p] = new Engine(seed, rules);
+            for(Engine[] s: snapshots) s[p] = new Engine(seed, rules);
+        }
+        input = new byte[WINDOW][playerCount];
+        started = new long[WINDOW];
+        dirtyFrom = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Starts a new game for every player.
+     *
+     * @param seed the seed all players' apples and mines are placed from
+     */
+    public synchronized void reset(final long seed){
+        for(Engine e: players) e.reset(seed);
+        for(byte[] i: input) Arrays.fill(i, (byte) 0);
+        tick = 0;
+        dirtyFrom = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Schedules a turn made at a given time for the tick it falls on plus
+     * the input delay. A turn made before ticks that have already been
+     * simulated rolls them back on the next {@link #advance()}.
+     *
+     * @param player the player
+     * @param direction the direction to turn
+     * @param when when the turn was made, in epoch milliseconds
+     */
+    public synchronized void press(final int player, final Game.GridPanel.Direction direction, final long when){
+        //The turn was made before the first tick that started after it.
+        int t = tick;
+        while(t > 0 && tick - t < WINDOW - 1 && started[(t - 1) & WINDOW_MASK] > when) t--;
+        submit(player, direction, t + inputDelay);
+    }
+
+    /**
+     * Schedules a turn for a tick.
+     *
+     * @param player the player
+     * @param direction the direction to turn
+     * @param at the tick to turn at
+     */
+    public synchronized void submit(final int player, final Game.GridPanel.Direction direction, final int at){
+        if(at >= tick + WINDOW - MAX_ROLLBACK - 1) throw new IllegalArgumentException("Input too far ahead.");
+        final int t = Math.max(at, Math.max(0, tick - MAX_ROLLBACK));
+        input[t & WINDOW_MASK][player] = (byte) (direction.ordinal() + 1);
+        if(t < tick) dirtyFrom = Math.min(dirtyFrom, t);
+    }
+
+    /**
+     * Simulates the next tick for every player, first rolling back and
+     * simulating again any ticks that late input has changed.
+     */
+    public synchronized void advance(){
+        if(dirtyFrom < tick) {
+            final long t0 = System.nanoTime();
+            final int depth = tick - dirtyFrom;
+            final Engine[] snapshot = snapshots[dirtyFrom % snapshots.length];
+            for(int p = 0; p < players.length; p++) players[p].copyFrom(snapshot[p]);
+            for(int t = dirtyFrom; t < tick; t++) step(t);
+            resimulationNanos += System.nanoTime() - t0;
+            resimulatedTicks += depth;
+            rollbacks++;
+            lastRollbackDepth = depth;
+            maxRollbackDepth = Math.max(maxRollbackDepth, depth);
+        }
+        dirtyFrom = Integer.MAX_VALUE;
+        started[tick & WINDOW_MASK] = System.currentTimeMillis();
+        step(tick++);
+        //Input for the tick that can no longer be rolled back to is done with.
+        if(tick > MAX_ROLLBACK) Arrays.fill(input[(tick - MAX_ROLLBACK - 1) & WINDOW_MASK], (byte) 0);
+    }
+
+    /*
+     * Snapshots the players and simulates one tick with its input.
+     */
+    private void step(final int t){
+        final Engine[] snapshot = snapshots[t % snapshots.length];
+        final byte[] turns = input[t & WINDOW_MASK];
+        for(int p = 0; p < players.length; p++) {
+            snapshot[p].copyFrom(players[p]);
+            if(turns[p] != 0) players[p].steer(DIRECTIONS[turns[p] - 1]);
+            players[p].tick();
+        }
+    }
+
+    /**
+     * Exposes a player's {@code Engine}. It must not be changed.
+     *
+     * @param player the player
+     * @return the {@code Engine}
+     */
+    public Engine player(final int player){
+        return players[player];
+    }
+
+    /**
+     * Exposes the number of players.
+     */
+    public int playerCount(){
+        return players.length;
+    }
+
+    /**
+     * Whether or not any player is still playing.
+     */
+    public synchronized boolean isRunning(){
+        for(Engine e: players) if(e.getGameStatus().isRunning()) return true;
+        return false;
+    }
+
+    /**
+     * Exposes the next tick to simulate.
+     */
+    public synchronized int getTick(){
+        return tick;
+    }
+
+    /**
+     * Exposes the number of rollbacks so far.
+     */
+    public synchronized long rollbacks(){
+        return rollbacks;
+    }
+
+    /**
+     * Exposes the number of ticks the last rollback re-simulated.
+     */
+    public synchronized int lastRollbackDepth(){
+        return lastRollbackDepth;
+    }
+
+    /**
+     * Exposes the most ticks any rollback has re-simulated.
+     */
+    public synchronized int maxRollbackDepth(){
+        return maxRollbackDepth;
+    }
+
+    /**
+     * Exposes the number of ticks re-simulated so far.
+     */
+    public synchronized long resimulatedTicks(){
+        return resimulatedTicks;
+    }
+
+    /**
+     * Exposes the mean time to restore a snapshot and re-simulate a tick.
+     *
+     * @return the time per re-simulated tick, in nanoseconds, or 0 before
+     *         the first rollback
+     */
+    public synchronized double resimulationNanosPerTick(){
+        return resimulatedTicks == 0? 0: resimulationNanos / (double) resimulatedTicks;
+    }
+
+    /**
+     * Plays two players under the {@code Autopilot} for {@code [ticks]}
+     * ticks from seed {@code [seed]}, delivering each turn late by up to
+     * {@code MAX_ROLLBACK} ticks, and checks that the result matches a run
+     * that received every turn on time. Reports rollback depth and the cost
+     * of re-simulation.
+     */
+    public static void main(final String[] args){
+        final int ticks = args.length > 0? Integer.parseInt(args[0]): 200_000;
+        final long seed = args.length > 1? Long.parseLong(args[1]): 0;
+        final Lockstep late = new Lockstep(2, seed, Rules.DEFAULT, DEFAULT_INPUT_DELAY);
+        final Lockstep onTime = new Lockstep(2, seed, Rules.DEFAULT, DEFAULT_INPUT_DELAY);
+        final Autopilot[] pilots = {new Autopilot(), new Autopilot()};
+        final SplittableRandom random = new SplittableRandom(seed);
+        //Turns decided on the on-time run, waiting to reach the late one: {tick due, player, direction}.
+        final int[][] pending = new int[1 << 12][];
+        int head = 0, tail = 0, games = 0;
+        final long start = System.nanoTime();
+        for(int t = 0; t < ticks; t++) {
+            if(!onTime.isRunning()) {
+                onTime.reset(seed + ++games);
+                late.reset(seed + games);
+                head = tail = 0;
+            }
+            for(int p = 0; p < 2; p++) {
+                final Engine e = onTime.player(p);
+                if(!e.getGameStatus().isRunning() || e.length() == 0) continue;
+                final Game.GridPanel.Direction d = pilots[p].decide(
+                        e.board(), e.head(), e.segment(0), e.length(), e.getDirection());
+                if(d == e.getDirection()) continue;
+                final int at = onTime.getTick() + DEFAULT_INPUT_DELAY;
+                onTime.submit(p, d, at);
+                //The late run hears of it up to MAX_ROLLBACK ticks after it was due.
+                pending[head++ & (pending.length - 1)] = new int[]{at + random.nextInt(MAX_ROLLBACK + 1), p, d.ordinal(), at};
+            }
+            while(tail != head && pending[tail & (pending.length - 1)][0] <= late.getTick()) {
+                final int[] turn = pending[tail++ & (pending.length - 1)];
+                late.submit(turn[1], DIRECTIONS[turn[2]], turn[3]);
+            }
+            onTime.advance();
+            late.advance();
+        }
+        //Deliver what is still on its way, and roll back for it.
+        while(tail != head) {
+            final int[] turn = pending[tail++ & (pending.length - 1)];
+            late.submit(turn[1], DIRECTIONS[turn[2]], turn[3]);
+        }
+        onTime.advance();
+        late.advance();
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        boolean same = true;
+        for(int p = 0; p < 2; p++) {
+            final Engine a = onTime.player(p), b = late.player(p);
+            same &= Arrays.equals(a.board(), b.board()) && a.head() == b.head() && a.getScore() == b.getScore()
+                    && a.getTick() == b.getTick() && a.getGameStatus() == b.getGameStatus();
+        }
+        System.out.printf("%d ticks of 2 players, %d games, in %.2fs: %d rollbacks, max depth %d, %d ticks re-simulated"
+                        + " at %.2fus/tick; %s%n",
+                ticks, games + 1, seconds, late.rollbacks(), late.maxRollbackDepth(), late.resimulatedTicks(),
+                late.resimulationNanosPerTick() / 1e3, same? "matches the on-time run": "DIVERGED from the on-time run");
+        if(!same) System.exit(1);
+    }
+
+}
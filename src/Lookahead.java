@@ -0,0 +1,599 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lookahead
+ *
+ * <p>A bot that plays by searching future ticks. Each decision is a
+ * depth-limited expectimax over copies of the {@code Engine}, deepened one
+ * tick at a time until the time budget runs out. Deaths end a line, apples
+ * score, and biting the tail costs one of the level's tail-bites, so a line
+ * that uses them up ends as the {@code Engine} ends it.
+ *
+ * <p>Apple and mine spawns are hidden: every search copy is reseeded, so
+ * spawns inside the search are samples rather than the real ones. A tick
+ * that starts a level is a chance node, valued as the mean over
+ * {@code CHANCE_SAMPLES} differently seeded spawns. Each searcher also
+ * samples its own future, and the value of a move is averaged over the
+ * searchers, so with more cores the chance nodes are covered by more
+ * samples. Searchers run in parallel on worker threads handed work by
+ * park/unpark.
+ *
+ * <p>Each searcher keeps a transposition table keyed by Zobrist hashes that
+ * its {@code Engine} copies maintain from their {@code Observer} callbacks,
+ * so a position reached again (by a different order of moves, or on a later
+ * tick) is not searched again. Tables are bucketed four ways and evict by
+ * the clock algorithm. Searches allocate nothing once the copies have grown
+ * to size.
+ */
+public final class Lookahead implements SessionHost.Pilot, AutoCloseable {
+
+    /**
+     * The default time allowed for one decision: half of a 20ms tick.
+     */
+    public static final long DEFAULT_BUDGET_NANOS;
+
+    /**
+     * The deepest a search goes, in ticks.
+     */
+    public static final int MAX_DEPTH;
+
+    /**
+     * The number of entries in each searcher's transposition table.
+     */
+    public static final int TABLE_SIZE;
+
+    /**
+     * The number of spawns sampled at each chance node, per searcher.
+     */
+    public static final int CHANCE_SAMPLES;
+
+    /*
+     * Values. A line is worth the apples it eats, discounted by how far off
+     * they are, less a penalty per tail-bite, and ends at DEATH if it dies.
+     * The search horizon is scored by the distance to the nearest apple and
+     * by whether the head has room to move.
+     */
+    private static final float APPLE;
+    private static final float DEATH;
+    private static final float TAIL_BITE;
+    private static final float DISCOUNT;
+    private static final float DISTANCE;
+    private static final float TRAPPED;
+    private static final int FILL_LIMIT;
+
+    /*
+     * Directions in ordinal order, the cell offsets of one step in each, and
+     * the cells the snake must not enter.
+     */
+    private static final Game.GridPanel.Direction[] DIRECTIONS;
+    private static final int[] OFFSETS;
+    private static final int BLOCKED;
+
+    /*
+     * Zobrist keys. Body keys are summed, so a cell the snake covers twice
+     * counts twice; the rest are XORed.
+     */
+    private static final long[] BODY_KEYS;
+    private static final long[] APPLE_KEYS;
+    private static final long[] MINE_KEYS;
+    private static final long[] HEAD_KEYS;
+    private static final long[] DIRECTION_KEYS;
+
+    /* init */
+    static {
+        DEFAULT_BUDGET_NANOS = 10_000_000L;
+        MAX_DEPTH = 32;
+        TABLE_SIZE = 1 << 16;
+        CHANCE_SAMPLES = 4;
+        APPLE = 1f;
+        DEATH = -10f;
+        TAIL_BITE = 0.5f;
+        DISCOUNT = 0.95f;
+        DISTANCE = 0.5f / (Engine.COLUMNS + Engine.ROWS);
+        TRAPPED = 5f;
+        FILL_LIMIT = 256;
+        DIRECTIONS = Game.GridPanel.Direction.values();
+        OFFSETS = new int[DIRECTIONS.length];
+        for(int i = 0; i < DIRECTIONS.length; i++) OFFSETS[i] = Engine.offset(DIRECTIONS[i]);
+        BLOCKED = Engine.WALL | Engine.BODY | Engine.MINE;
+        final SplittableRandom random = new SplittableRandom(0x5EEDL);
+        BODY_KEYS = keys(random, Engine.CELLS);
+        APPLE_KEYS = keys(random, Engine.CELLS);
+        MINE_KEYS = keys(random, Engine.CELLS);
+        HEAD_KEYS = keys(random, Engine.CELLS);
+        DIRECTION_KEYS = keys(random, DIRECTIONS.length);
+    }
+
+    private static long[] keys(final SplittableRandom random, final int n){
+        final long[] keys = new long[n];
+        for(int i = 0; i < n; i++) keys[i] = random.nextLong();
+        return keys;
+    }
+
+    /*
+     * The searchers. Searcher 0 runs on the deciding thread, the rest on
+     * workers that wait for the generation to change.
+     */
+    private final Searcher[] searchers;
+    private final Thread[] workers;
+    private final AtomicInteger remaining;
+    private final long budget;
+    private volatile int generation;
+    private volatile boolean open;
+    private volatile Thread caller;
+    private volatile Engine root;
+    private volatile long deadline;
+
+    /*
+     * Statistics, kept by the deciding thread.
+     */
+    private long decisions;
+    private long depths;
+
+    /**
+     * A public constructor for a {@code Lookahead} that searches on every
+     * core for {@code DEFAULT_BUDGET_NANOS} per decision.
+     */
+    public Lookahead(){
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_BUDGET_NANOS);
+    }
+
+    /**
+     * A public constructor for a {@code Lookahead}.
+     *
+     * @param threads the number of searchers, including the deciding thread
+     * @param budget the time allowed for one decision, in nanoseconds
+     */
+    public Lookahead(final int threads, final long budget){
+        this.budget = budget;
+        searchers = new Searcher[Math.max(1, threads)];
+        for(int i = 0; i < searchers.length; i++) searchers[i] = new Searcher(0x10C4L * 31 + i);
+        remaining = new AtomicInteger();
+        open = true;
+        workers = new Thread[searchers.length - 1];
+        for(int w = 0; w < workers.length; w++) {
+            final Searcher s = searchers[w + 1];
+            workers[w] = new Thread(() -> work(s), "SneK-lookahead-" + (w + 1));
+            workers[w].setDaemon(true);
+            workers[w].start();
+        }
+    }
+
+    /**
+     * Searches for the best move and steers the {@code Engine} toward it.
+     * Returns within the time budget, give or take one node.
+     */
+    @Override
+    public void steer(final Engine engine){
+        if(!engine.getGameStatus().isRunning() || engine.length() == 0) return;
+        root = engine;
+        deadline = System.nanoTime() + budget;
+        if(workers.length > 0) {
+            caller = Thread.currentThread();
+            remaining.set(workers.length);
+            generation++;
+            for(Thread w: workers) LockSupport.unpark(w);
+        }
+        searchers[0].search(engine, deadline);
+        while(remaining.get() > 0) LockSupport.park(this);
+        //Average each move over the searchers that valued it.
+        int best = -1;
+        float bestValue = Float.NEGATIVE_INFINITY;
+        int deepest = 0;
+        for(int m = 0; m < DIRECTIONS.length; m++) {
+            float sum = 0;
+            int n = 0;
+            for(Searcher s: searchers) {
+                if(Float.isNaN(s.rootValues[m])) continue;
+                sum += s.rootValues[m];
+                n++;
+            }
+            if(n == 0) continue;
+            final float v = sum / n;
+            if(v > bestValue || v == bestValue && DIRECTIONS[m] == engine.getDirection()) {
+                best = m;
+                bestValue = v;
+            }
+        }
+        for(Searcher s: searchers) deepest = Math.max(deepest, s.completedDepth);
+        decisions++;
+        depths += deepest;
+        if(best >= 0) engine.steer(DIRECTIONS[best]);
+    }
+
+    private void work(final Searcher s){
+        int seen = 0;
+        while(open) {
+            if(generation == seen) {
+                LockSupport.park(this);
+                continue;
+            }
+            seen = generation;
+            s.search(root, deadline);
+            if(remaining.decrementAndGet() == 0) LockSupport.unpark(caller);
+        }
+    }
+
+    /**
+     * Exposes the number of positions searched so far, over every searcher.
+     * Call from the deciding thread.
+     */
+    public long nodes(){
+        long n = 0;
+        for(Searcher s: searchers) n += s.nodes;
+        return n;
+    }
+
+    /**
+     * Exposes the number of positions answered by a transposition table.
+     * Call from the deciding thread.
+     */
+    public long hits(){
+        long n = 0;
+        for(Searcher s: searchers) n += s.hits;
+        return n;
+    }
+
+    /**
+     * Exposes the mean depth, in ticks, of the deepest completed search of
+     * each decision.
+     */
+    public double meanDepth(){
+        return decisions == 0? 0: depths / (double) decisions;
+    }
+
+    @Override
+    public void close(){
+        open = false;
+        for(Thread w: workers) LockSupport.unpark(w);
+    }
+
+    /*
+     * One search over sampled spawns: a stack of Engine copies, one per ply, each
+     * with an Observer that keeps its Zobrist hash, plus a transposition
+     * table and flood-fill buffers.
+     */
+    private static final class Searcher {
+
+        final SplittableRandom random;
+        final Engine[] stack;
+        final Hasher[] hashers;
+        final Table table;
+        final float[] rootValues;
+        final float[] values;
+        final int[] queue;
+        final int[] stamps;
+        int stamp;
+        int completedDepth;
+        long deadline;
+        boolean aborted;
+        int checks;
+        long nodes;
+        long hits;
+
+        Searcher(final long seed){
+            random = new SplittableRandom(seed);
+            stack = new Engine[MAX_DEPTH + 1];
+            hashers = new Hasher[MAX_DEPTH + 1];
+            for(int d = 0; d <= MAX_DEPTH; d++) hashers[d] = new Hasher();
+            table = new Table(TABLE_SIZE);
+            rootValues = new float[DIRECTIONS.length];
+            values = new float[DIRECTIONS.length];
+            queue = new int[Engine.CELLS];
+            stamps = new int[Engine.CELLS];
+        }
+
+        /*
+         * Deepens a search from the root until the deadline, leaving the
+         * values of the deepest completed iteration in rootValues.
+         */
+        void search(final Engine root, final long deadline){
+            this.deadline = deadline;
+            Arrays.fill(rootValues, Float.NaN);
+            completedDepth = 0;
+            if(stack[0] == null || stack[0].getRules() != root.getRules()) {
+                for(int d = 0; d <= MAX_DEPTH; d++) {
+                    stack[d] = new Engine(0, root.getRules());
+                    stack[d].setObserver(hashers[d]);
+                }
+            }
+            stack[0].copyFrom(root);
+            stack[0].reseed(random.nextLong());
+            hashers[0].hash = hash(stack[0]);
+            aborted = false;
+            for(int depth = 1; depth <= MAX_DEPTH && !aborted; depth++) {
+                Arrays.fill(values, Float.NaN);
+                final int reverse = reverse(stack[0]);
+                for(int m = 0; m < DIRECTIONS.length && !aborted; m++) {
+                    if(m != reverse) values[m] = expand(0, m, depth);
+                }
+                if(aborted) break;
+                System.arraycopy(values, 0, rootValues, 0, values.length);
+                completedDepth = depth;
+                if(System.nanoTime() > deadline) break;
+            }
+        }
+
+        /*
+         * Returns the value of one move from the Engine at ply d. If the move
+         * starts a level, its spawns are a chance node and the value is the
+         * mean over CHANCE_SAMPLES reseeded plays; otherwise it is one play.
+         */
+        float expand(final int d, final int m, final int depth){
+            if(stack[d].appleCount() != 0) return play(d, m, depth, false);
+            float sum = 0;
+            for(int i = 0; i < CHANCE_SAMPLES; i++) {
+                sum += play(d, m, depth, true);
+                if(aborted) return 0;
+            }
+            return sum / CHANCE_SAMPLES;
+        }
+
+        /*
+         * Plays one move from the Engine at ply d into ply d + 1 and returns
+         * its value: what the move itself earns plus the discounted value of
+         * the position it leads to. A reseeded play samples fresh spawns.
+         */
+        float play(final int d, final int m, final int depth, final boolean reseed){
+            final Engine parent = stack[d], child = stack[d + 1];
+            child.copyFrom(parent);
+            if(reseed) child.reseed(random.nextLong());
+            hashers[d + 1].hash = hashers[d].hash;
+            child.steer(DIRECTIONS[m]);
+            child.tick();
+            nodes++;
+            if(!child.getGameStatus().isRunning()) return DEATH;
+            float reward = 0;
+            if(child.getScore() > parent.getScore()) reward += APPLE;
+            if(child.getLevel() == parent.getLevel() && child.getTailBites() < parent.getTailBites()) {
+                reward -= TAIL_BITE;
+            }
+            return reward + DISCOUNT * value(d + 1, depth - 1);
+        }
+
+        /*
+         * The value of the position at ply d, searched depth more ticks.
+         */
+        float value(final int d, final int depth){
+            final Engine e = stack[d];
+            if(depth == 0) return evaluate(e);
+            if((++checks & 0xFF) == 0 && System.nanoTime() > deadline) aborted = true;
+            if(aborted) return 0;
+            final long key = key(e, hashers[d].hash);
+            final float cached = table.probe(key, depth);
+            if(!Float.isNaN(cached)) {
+                hits++;
+                return cached;
+            }
+            float best = DEATH;
+            final int reverse = reverse(e);
+            for(int m = 0; m < DIRECTIONS.length; m++) {
+                if(m == reverse) continue;
+                best = Math.max(best, expand(d, m, depth));
+                if(aborted) return 0;
+            }
+            table.store(key, depth, best);
+            return best;
+        }
+
+        /*
+         * Scores a position at the search horizon.
+         */
+        float evaluate(final Engine e){
+            final int head = e.head();
+            final int hx = Engine.column(head), hy = Engine.row(head);
+            int nearest = Engine.COLUMNS + Engine.ROWS;
+            for(int i = 0; i < e.appleCount(); i++) {
+                final int a = e.apple(i);
+                nearest = Math.min(nearest, Math.abs(Engine.column(a) - hx) + Math.abs(Engine.row(a) - hy));
+            }
+            float v = -DISTANCE * nearest;
+            final int limit = Math.min(e.length(), FILL_LIMIT);
+            final int room = room(e.board(), head, limit);
+            if(room < limit) v -= TRAPPED * (1f - room / (float) limit);
+            return v;
+        }
+
+        /*
+         * Counts the open cells reachable from the head, up to a limit.
+         */
+        int room(final byte[] cells, final int head, final int limit){
+            if(++stamp == 0) {
+                Arrays.fill(stamps, 0);
+                stamp = 1;
+            }
+            stamps[head] = stamp;
+            queue[0] = head;
+            int read = 0, write = 1;
+            while(read < write && write <= limit) {
+                final int c = queue[read++];
+                for(int o: OFFSETS) {
+                    final int n = c + o;
+                    if(stamps[n] == stamp || (cells[n] & BLOCKED) != 0) continue;
+                    stamps[n] = stamp;
+                    queue[write++] = n;
+                }
+            }
+            return write - 1;
+        }
+    }
+
+    /*
+     * The ordinal of the move that would reverse the snake, which the Engine
+     * ignores, so it is not searched.
+     */
+    private static int reverse(final Engine e){
+        final int back = -Engine.offset(e.getDirection());
+        for(int m = 0; m < OFFSETS.length; m++) if(OFFSETS[m] == back) return m;
+        return -1;
+    }
+
+    /*
+     * The Zobrist hash of the pieces of a position, computed from scratch.
+     */
+    private static long hash(final Engine e){
+        long h = 0;
+        for(int i = 0; i < e.length(); i++) h += BODY_KEYS[e.segment(i)];
+        for(int i = 0; i < e.appleCount(); i++) h ^= APPLE_KEYS[e.apple(i)];
+        for(int i = 0; i < e.mineCount(); i++) h ^= MINE_KEYS[e.mine(i)];
+        return h;
+    }
+
+    /*
+     * The transposition key of a position: the hash of its pieces, plus the
+     * head, the direction and the counters that change its future.
+     */
+    private static long key(final Engine e, final long hash){
+        long k = hash ^ HEAD_KEYS[e.head()] ^ DIRECTION_KEYS[e.getDirection().ordinal()];
+        k ^= e.getTailBites() * 0x9E3779B97F4A7C15L;
+        k ^= e.getLegalSnakeSize() * 0xC2B2AE3D27D4EB4FL;
+        k ^= e.getLevel() * 0x165667B19E3779F9L;
+        return k == 0? 1: k;
+    }
+
+    /*
+     * Keeps an Engine copy's Zobrist hash up to date as it plays.
+     */
+    private static final class Hasher implements Engine.Observer {
+
+        long hash;
+
+        @Override
+        public void headAdded(final int cell){
+            hash += BODY_KEYS[cell];
+        }
+        @Override
+        public void tailRemoved(final int cell){
+            hash -= BODY_KEYS[cell];
+        }
+        @Override
+        public void appleSpawned(final int cell){
+            hash ^= APPLE_KEYS[cell];
+        }
+        @Override
+        public void appleEaten(final int cell){
+            hash ^= APPLE_KEYS[cell];
+        }
+        @Override
+        public void mineSpawned(final int cell){
+            hash ^= MINE_KEYS[cell];
+        }
+        @Override
+        public void mineCleared(final int cell){
+            hash ^= MINE_KEYS[cell];
+        }
+    }
+
+    /*
+     * A transposition table of position values, bucketed four ways. Each
+     * bucket evicts by the clock algorithm: a hit marks an entry referenced,
+     * and the bucket's hand passes over referenced entries once, clearing the
+     * mark, before evicting.
+     */
+    private static final class Table {
+
+        final long[] keys;
+        final float[] values;
+        final byte[] depths;
+        final boolean[] referenced;
+        final byte[] hands;
+        final int mask;
+
+        Table(final int size){
+            keys = new long[size];
+            values = new float[size];
+            depths = new byte[size];
+            referenced = new boolean[size];
+            hands = new byte[size >> 2];
+            mask = size - 1;
+        }
+
+        /*
+         * The value stored for a key if it was searched at least as deep as
+         * asked, or NaN.
+         */
+        float probe(final long key, final int depth){
+            final int b = bucket(key);
+            for(int i = b; i < b + 4; i++) {
+                if(keys[i] != key) continue;
+                referenced[i] = true;
+                return depths[i] >= depth? values[i]: Float.NaN;
+            }
+            return Float.NaN;
+        }
+
+        void store(final long key, final int depth, final float value){
+            final int b = bucket(key);
+            int slot = -1;
+            for(int i = b; i < b + 4; i++) {
+                if(keys[i] == key || keys[i] == 0) {
+                    slot = i;
+                    break;
+                }
+            }
+            if(slot < 0) {
+                int hand = hands[b >> 2];
+                while(referenced[b + hand]) {
+                    referenced[b + hand] = false;
+                    hand = (hand + 1) & 3;
+                }
+                slot = b + hand;
+                hands[b >> 2] = (byte) ((hand + 1) & 3);
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            depths[slot] = (byte) depth;
+            referenced[slot] = false;
+        }
+
+        int bucket(final long key){
+            return (int) (key ^ key >>> 32) & mask & ~3;
+        }
+    }
+
+    /**
+     * Plays {@code [games]} games of at most {@code [ticks]} ticks under the
+     * {@code Lookahead}, with {@code [budget]} milliseconds per decision, and
+     * reports how well it plays, how deep it searches and how often the
+     * transposition tables answer, next to the {@code Autopilot} on the same
+     * seeds.
+     */
+    public static void main(final String[] args){
+        final int games = args.length > 0? Integer.parseInt(args[0]): 3;
+        final int ticks = args.length > 1? Integer.parseInt(args[1]): 2_000;
+        final long budget = args.length > 2? (long) (Double.parseDouble(args[2]) * 1e6): DEFAULT_BUDGET_NANOS;
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final Engine engine = new Engine(0);
+        try(Lookahead lookahead = new Lookahead(threads, budget)) {
+            final SessionHost.Pilot[] pilots = {lookahead, new Autopilot()};
+            for(SessionHost.Pilot pilot: pilots) {
+                long scores = 0, levels = 0, decisions = 0, nanos = 0, worst = 0;
+                int died = 0;
+                for(int g = 0; g < games; g++) {
+                    engine.reset(g);
+                    do {
+                        final long start = System.nanoTime();
+                        pilot.steer(engine);
+                        final long took = System.nanoTime() - start;
+                        nanos += took;
+                        worst = Math.max(worst, took);
+                        decisions++;
+                    } while(engine.tick() && engine.getTick() < ticks);
+                    if(!engine.getGameStatus().isRunning()) died++;
+                    scores += engine.getScore();
+                    levels += engine.getLevel();
+                }
+                System.out.printf("%s: %d games, %d died, mean level %.1f, mean score %.1f, %.3fms/decision (worst %.3fms)%n",
+                        pilot.getClass().getSimpleName(), games, died, levels / (double) games,
+                        scores / (double) games, nanos / 1e6 / decisions, worst / 1e6);
+            }
+            System.out.printf("Lookahead on %d threads: mean depth %.1f, %d nodes, %.1f%% table hits%n",
+                    threads, lookahead.meanDepth(), lookahead.nodes(),
+                    100.0 * lookahead.hits() / Math.max(1, lookahead.nodes()));
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+import java.awt.*;
+
+/**
+ * Palette
+ *
+ * <p>The fixed set of colors the game is drawn in, by index. {@code GridPanel}
+ * paints with these colors, and renderers that do not use Swing (such as the
+ * {@code Recorder}) draw with the indices, so both stay in step.
+ */
+public final class Palette {
+
+    /**
+     * Color indices.
+     */
+    public static final int BACKGROUND;
+    public static final int HEAD;
+    public static final int SEGMENT;
+    public static final int APPLE;
+    public static final int MINE;
+    public static final int BLAST;
+
+    /**
+     * The number of colors in the {@code Palette}.
+     */
+    public static final int SIZE;
+
+    /*
+     * The colors, by index.
+     */
+    private static final Color[] COLORS;
+
+    /* init */
+    static {
+        BACKGROUND = 0;
+        HEAD = 1;
+        SEGMENT = 2;
+        APPLE = 3;
+        MINE = 4;
+        BLAST = 5;
+        SIZE = 6;
+        COLORS = new Color[SIZE];
+        COLORS[BACKGROUND] = Color.BLACK;
+        COLORS[HEAD] = new Color(15,100,50);
+        COLORS[SEGMENT] = new Color(10,255,100);
+        COLORS[APPLE] = new Color(250, 10, 10);
+        COLORS[MINE] = new Color(200,0,100);
+        COLORS[BLAST] = Color.WHITE;
+    }
+
+    /*
+     * Not instantiable.
+     */
+    private Palette(){}
+
+    /**
+     * Exposes a color of the {@code Palette}.
+     *
+     * @param index the color index
+     * @return the color
+     */
+    public static Color color(final int index){
+        return COLORS[index];
+    }
+
+    /**
+     * Exposes a color of the {@code Palette} as packed {@code 0xRRGGBB}.
+     *
+     * @param index the color index
+     * @return the color's RGB value
+     */
+    public static int rgb(final int index){
+        return COLORS[index].getRGB() & 0xFFFFFF;
+    }
+
+}
@@ -0,0 +1,439 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Recorder
+ *
+ * <p>Exports games as animated GIFs, drawn offscreen the way {@code GridPanel}
+ * draws them, in the colors of the {@code Palette}.
+ *
+ * <p>The ticking thread hands the {@code Recorder} a copy of the board each
+ * tick, taken from a fixed pool of frame buffers; a worker thread draws each
+ * frame into an indexed-color canvas and passes only the rectangle that
+ * changed to a {@code GifEncoder}, with unchanged pixels transparent. A
+ * {@link #capture(Engine) live capture} never waits: if the worker has fallen
+ * behind and the pool is empty the frame is dropped, and the next frame shows
+ * everything that changed in the meantime. A {@link #play(Engine,
+ * SessionHost.Pilot, int) replay} waits for the worker instead, so it records
+ * every tick as fast as the encoder can go.
+ */
+public final class Recorder implements AutoCloseable {
+
+    /**
+     * The size of a recording, in pixels.
+     */
+    public static final int WIDTH;
+    public static final int HEIGHT;
+
+    /**
+     * The length of a tick, in milliseconds, as {@code GridPanel} ticks at
+     * level one. Recordings keep this pace at every level.
+     */
+    public static final int DEFAULT_TICK_MILLIS;
+
+    /**
+     * The number of frames that may wait for the worker before frames are
+     * dropped.
+     */
+    public static final int DEFAULT_BUFFERED_FRAMES;
+
+    /*
+     * The index of pixels a frame leaves as they were, just past the Palette.
+     */
+    private static final int TRANSPARENT;
+
+    /*
+     * Cell geometry: the inset of a cell's square, and the size and offset of
+     * a mine's blast, in pixels, as Mine.paint draws them.
+     */
+    private static final int SQUARE_SIZE;
+    private static final int SQUARE_BUFF;
+    private static final int BLAST_SIZE;
+    private static final int BLAST_OFFSET;
+
+    /* init */
+    static {
+        SQUARE_SIZE = Engine.SQUARE_SIZE;
+        SQUARE_BUFF = 2;
+        BLAST_SIZE = SQUARE_SIZE << 2;
+        BLAST_OFFSET = -20;
+        WIDTH = Engine.COLUMNS * SQUARE_SIZE;
+        HEIGHT = Engine.ROWS * SQUARE_SIZE;
+        DEFAULT_TICK_MILLIS = 20;
+        DEFAULT_BUFFERED_FRAMES = 256;
+        TRANSPARENT = Palette.SIZE;
+    }
+
+    /*
+     * Frames in flight: the pool of empty frame buffers, and the frames
+     * waiting for the worker.
+     */
+    private final BlockingQueue<Frame> free;
+    private final BlockingQueue<Frame> full;
+    private final Thread worker;
+    private volatile IOException failure;
+
+    /*
+     * Capture state, owned by the capturing thread.
+     */
+    private long ticks;
+    private long dropped;
+    private boolean closed;
+
+    /*
+     * Drawing state, owned by the worker. shown is the canvas as the GIF
+     * shows it so far; delta is transparent but for the pixels of the frame
+     * being built.
+     */
+    private final GifEncoder encoder;
+    private final int tickMillis;
+    private final byte[] shown;
+    private final byte[] delta;
+    private final byte[] cells;
+    private int head;
+    private final int[] dirty;
+    private final int[] dirtyStamps;
+    private int dirtyCount;
+    private int stamp;
+    private final int[] blasts;
+    private long lastTick;
+    private int carryMillis;
+    private long frames;
+    private boolean started;
+
+    /**
+     * A public constructor for a {@code Recorder}. Starts the worker.
+     *
+     * @param path the GIF file to write
+     * @param tickMillis the length of a tick, in milliseconds
+     * @param bufferedFrames the number of frames that may wait for the worker
+     * @throws IOException if the file cannot be created
+     */
+    public Recorder(final Path path, final int tickMillis, final int bufferedFrames) throws IOException {
+        if(path.toAbsolutePath().getParent() != null) Files.createDirectories(path.toAbsolutePath().getParent());
+        final int[] palette = new int[Palette.SIZE + 1];
+        for(int i = 0; i < Palette.SIZE; i++) palette[i] = Palette.rgb(i);
+        encoder = new GifEncoder(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16), WIDTH, HEIGHT, palette);
+        this.tickMillis = tickMillis;
+        shown = new byte[WIDTH * HEIGHT];
+        delta = new byte[WIDTH * HEIGHT];
+        Arrays.fill(delta, (byte) TRANSPARENT);
+        cells = new byte[Engine.CELLS];
+        Engine.clear(cells);
+        head = -1;
+        dirty = new int[Engine.CELLS];
+        dirtyStamps = new int[Engine.CELLS];
+        blasts = new int[BLAST_SIZE * BLAST_SIZE];
+        free = new ArrayBlockingQueue<>(bufferedFrames);
+        full = new ArrayBlockingQueue<>(bufferedFrames + 1);
+        for(int i = 0; i < bufferedFrames; i++) free.add(new Frame());
+        worker = new Thread(this::work, "SneK-recorder");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Records the state of an {@code Engine} after a tick, unless the worker
+     * has fallen too far behind. Never blocks.
+     *
+     * @param engine the game
+     * @return whether or not the frame was kept
+     */
+    public boolean capture(final Engine engine){
+        return capture(engine.board(), engine.length() == 0? -1: engine.head());
+    }
+
+    /**
+     * Records a board laid out as {@code Engine} lays out its board, unless
+     * the worker has fallen too far behind. Never blocks.
+     *
+     * @param board the board
+     * @param head the cell of the head of the snake, or -1 for no snake
+     * @return whether or not the frame was kept
+     */
+    public boolean capture(final byte[] board, final int head){
+        ticks++;
+        final Frame f = free.poll();
+        if(f == null) {
+            dropped++;
+            return false;
+        }
+        submit(f, board, head);
+        return true;
+    }
+
+    /**
+     * Plays a game out under a {@code Pilot}, recording every tick from the
+     * current one. Waits for the worker rather than dropping frames.
+     *
+     * @param engine the game
+     * @param pilot the player
+     * @param maxTicks the most ticks to play
+     * @return the number of ticks played
+     * @throws InterruptedException if interrupted while waiting for the worker
+     */
+    public int play(final Engine engine,
+                    final SessionHost.Pilot pilot,
+                    final int maxTicks) throws InterruptedException {
+        int played = 0;
+        ticks++;
+        submit(free.take(), engine.board(), engine.length() == 0? -1: engine.head());
+        while(played < maxTicks && engine.getGameStatus().isRunning()) {
+            pilot.steer(engine);
+            engine.tick();
+            played++;
+            ticks++;
+            submit(free.take(), engine.board(), engine.head());
+        }
+        return played;
+    }
+
+    private void submit(final Frame f, final byte[] board, final int head){
+        System.arraycopy(board, 0, f.cells, 0, Engine.CELLS);
+        f.head = head;
+        f.tick = ticks;
+        f.last = false;
+        full.add(f);
+    }
+
+    /**
+     * Exposes the number of frames dropped because the worker fell behind.
+     * Call from the capturing thread.
+     */
+    public long dropped(){
+        return dropped;
+    }
+
+    /**
+     * Exposes the number of GIF frames written. Call after {@link #close()}.
+     */
+    public long frames(){
+        return frames;
+    }
+
+    /**
+     * Waits for the worker to draw every frame captured so far, then
+     * finishes the GIF.
+     *
+     * @throws IOException if the GIF could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed) return;
+        closed = true;
+        try {
+            final Frame f = free.take();
+            f.last = true;
+            f.tick = ticks + 1;
+            full.add(f);
+            worker.join();
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while finishing the recording.", e);
+        }
+        if(failure != null) throw failure;
+    }
+
+    /*
+     * The worker: draws frames until the last one, then finishes the GIF.
+     * After a failure it keeps taking frames so nobody waits on it forever.
+     */
+    private void work(){
+        try {
+            while(true) {
+                final Frame f = full.take();
+                if(failure == null) {
+                    try {
+                        draw(f);
+                    } catch(IOException e){
+                        failure = e;
+                    }
+                }
+                if(f.last) break;
+                free.add(f);
+            }
+            encoder.close();
+        } catch(IOException e){
+            if(failure == null) failure = e;
+        } catch(InterruptedException e){
+            failure = new IOException("Recorder interrupted.", e);
+        }
+    }
+
+    /*
+     * Draws the cells that changed since the last frame and hands the
+     * rectangle around them to the encoder. The first frame is drawn whole.
+     */
+    private void draw(final Frame f) throws IOException {
+        carryMillis += (int) (f.tick - lastTick) * tickMillis;
+        encoder.hold(carryMillis / 10);
+        carryMillis %= 10;
+        lastTick = f.tick;
+        if(f.last) return;
+        final byte[] next = f.cells;
+        //Find the cells that changed, and the cells that a blast changed.
+        nextStamp();
+        dirtyCount = 0;
+        int i = 0;
+        while(i < Engine.CELLS) {
+            final int m = Arrays.mismatch(cells, i, Engine.CELLS, next, i, Engine.CELLS);
+            if(m < 0) break;
+            final int c = i + m;
+            markDirty(c);
+            if(((cells[c] ^ next[c]) & Engine.DETONATED) != 0) markBlast(c);
+            i = c + 1;
+        }
+        if(head != f.head) {
+            if(head >= 0) markDirty(head);
+            if(f.head >= 0) markDirty(f.head);
+        }
+        System.arraycopy(next, 0, cells, 0, Engine.CELLS);
+        head = f.head;
+        //Redraw them, noting which pixels differ from what is shown.
+        int minX = WIDTH, minY = HEIGHT, maxX = -1, maxY = -1;
+        for(int d = 0; d < dirtyCount; d++) {
+            final int c = dirty[d];
+            final int x0 = Engine.column(c) * SQUARE_SIZE, y0 = Engine.row(c) * SQUARE_SIZE;
+            final int color = color(c);
+            final int blastCount = findBlasts(c);
+            for(int y = y0; y < y0 + SQUARE_SIZE; y++) {
+                for(int x = x0; x < x0 + SQUARE_SIZE; x++) {
+                    int p = x - x0 >= SQUARE_BUFF && y - y0 >= SQUARE_BUFF? color: Palette.BACKGROUND;
+                    for(int b = 0; b < blastCount; b += 2) {
+                        if(x >= blasts[b] && x < blasts[b] + BLAST_SIZE &&
+                                y >= blasts[b + 1] && y < blasts[b + 1] + BLAST_SIZE) {
+                            p = Palette.BLAST;
+                        }
+                    }
+                    final int o = y * WIDTH + x;
+                    if(shown[o] == p) continue;
+                    shown[o] = delta[o] = (byte) p;
+                    if(x < minX) minX = x;
+                    if(x > maxX) maxX = x;
+                    if(y < minY) minY = y;
+                    if(y > maxY) maxY = y;
+                }
+            }
+        }
+        if(!started) {
+            started = true;
+            encoder.frame(shown, WIDTH, 0, 0, WIDTH, HEIGHT, 0, -1);
+            frames++;
+        } else if(maxX >= 0) {
+            encoder.frame(delta, WIDTH, minX, minY, maxX - minX + 1, maxY - minY + 1, 0, TRANSPARENT);
+            frames++;
+        }
+        //Leave delta transparent for the next frame.
+        for(int d = 0; d < dirtyCount; d++) {
+            final int c = dirty[d];
+            final int x0 = Engine.column(c) * SQUARE_SIZE, y0 = Engine.row(c) * SQUARE_SIZE;
+            for(int y = y0; y < y0 + SQUARE_SIZE; y++) {
+                Arrays.fill(delta, y * WIDTH + x0, y * WIDTH + x0 + SQUARE_SIZE, (byte) TRANSPARENT);
+            }
+        }
+    }
+
+    /*
+     * The color of a cell's square, painted in GridPanel's order: the snake,
+     * then apples, then mines. A detonated mine leaves its square black.
+     */
+    private int color(final int c){
+        final int bits = cells[c];
+        if((bits & Engine.DETONATED) != 0) return Palette.BACKGROUND;
+        if((bits & Engine.MINE) != 0) return Palette.MINE;
+        if((bits & Engine.APPLE) != 0) return Palette.APPLE;
+        if(c == head) return Palette.HEAD;
+        return (bits & Engine.BODY) != 0? Palette.SEGMENT: Palette.BACKGROUND;
+    }
+
+    /*
+     * Collects the pixel origins of the blasts that reach a cell into
+     * blasts, as x, y pairs, and returns the number of ints collected.
+     */
+    private int findBlasts(final int c){
+        final int x = Engine.column(c), y = Engine.row(c);
+        int n = 0;
+        for(int by = Math.max(0, y - 1); by <= Math.min(Engine.ROWS - 1, y + 3); by++) {
+            for(int bx = Math.max(0, x - 1); bx <= Math.min(Engine.COLUMNS - 1, x + 3); bx++) {
+                if((cells[Engine.cell(bx, by)] & Engine.DETONATED) == 0) continue;
+                blasts[n++] = bx * SQUARE_SIZE + BLAST_OFFSET;
+                blasts[n++] = by * SQUARE_SIZE + BLAST_OFFSET;
+            }
+        }
+        return n;
+    }
+
+    /*
+     * Marks every cell a blast at the given cell reaches.
+     */
+    private void markBlast(final int c){
+        final int x = Engine.column(c), y = Engine.row(c);
+        for(int by = y - 3; by <= y + 1; by++) {
+            for(int bx = x - 3; bx <= x + 1; bx++) markDirty(Engine.cell(bx, by));
+        }
+    }
+
+    /*
+     * Marks a cell for redrawing, if it is on the board.
+     */
+    private void markDirty(final int c){
+        final int x = Engine.column(c), y = Engine.row(c);
+        if(x < 0 || y < 0 || x >= Engine.COLUMNS || y >= Engine.ROWS) return;
+        if(dirtyStamps[c] == stamp) return;
+        dirtyStamps[c] = stamp;
+        dirty[dirtyCount++] = c;
+    }
+
+    private void nextStamp(){
+        if(++stamp == 0) {
+            Arrays.fill(dirtyStamps, 0);
+            stamp = 1;
+        }
+    }
+
+    /*
+     * A copy of the board at one tick.
+     */
+    private static final class Frame {
+        final byte[] cells = new byte[Engine.CELLS];
+        int head;
+        long tick;
+        boolean last;
+    }
+
+    /**
+     * Exports games played by the {@code Autopilot} to {@code [out]},
+     * back to back from seed {@code [seed]} until {@code [ticks]} ticks
+     * (ten minutes of play by default) have been recorded, and reports how
+     * long the export took.
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        final Path out = Paths.get(args.length > 0? args[0]: "snek.gif");
+        long seed = args.length > 1? Long.parseLong(args[1]): 0;
+        final int ticks = args.length > 2? Integer.parseInt(args[2]): 10 * 60 * 1000 / DEFAULT_TICK_MILLIS;
+        final Autopilot pilot = new Autopilot();
+        final Engine engine = new Engine(seed);
+        final long start = System.nanoTime();
+        int played = 0, games = 0;
+        final Recorder recorder = new Recorder(out, DEFAULT_TICK_MILLIS, DEFAULT_BUFFERED_FRAMES);
+        try {
+            while(played < ticks) {
+                engine.reset(seed++);
+                played += recorder.play(engine, pilot, ticks - played);
+                games++;
+            }
+        } finally {
+            recorder.close();
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d ticks (%.1f min of play, %d games) exported in %.2fs: %d frames, %d bytes%n",
+                played, played * DEFAULT_TICK_MILLIS / 60_000.0, games, seconds, recorder.frames(), Files.size(out));
+    }
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Rules
+ *
+ * <p>The progression constants an {@code Engine} plays by. {@code DEFAULT} is
+ * the game as {@code Game.GridPanel} plays it; other instances exist so the
+ * constants can be varied in simulation.
+ */
+public final class Rules {
+
+    /**
+     * The rules of the game as shipped.
+     */
+    public static final Rules DEFAULT;
+
+    /* init */
+    static {
+        DEFAULT = new Rules(
+                Engine.DEFAULT_SNAKE_SIZE,
+                Engine.DEFAULT_APPLE_QUANTITY,
+                Engine.APPLE_INCREMENT,
+                Engine.DEFAULT_MINE_QUANTITY,
+                Engine.MINE_INCREMENT,
+                Engine.MINE_INTRODUCTION_LEVEL,
+                Engine.DEFAULT_TAIL_BITE_QUANTITY,
+                Engine.DEFAULT_SCORE,
+                Engine.SCORE_INCREMENT,
+                Engine.DEFAULT_SPAWN_WIDENING
+        );
+    }
+
+    /**
+     * The legal size of a new snake.
+     */
+    public final int snakeSize;
+
+    /**
+     * The number of apples on the first level, and how many more each level
+     * brings.
+     */
+    public final int appleQuantity;
+    public final int appleIncrement;
+
+    /**
+     * The number of mines on the first level with mines, how many more each
+     * level brings, and the level mines first appear on.
+     */
+    public final int mineQuantity;
+    public final int mineIncrement;
+    public final int mineIntroductionLevel;
+
+    /**
+     * The number of tail-bites allowed per level.
+     */
+    public final int tailBiteQuantity;
+
+    /**
+     * The starting score, and the score of an apple.
+     */
+    public final int score;
+    public final int scoreIncrement;
+
+    /**
+     * How many cells each side of the apple spawn window moves out per level,
+     * until the window covers the whole board. {@code 0} keeps apples in the
+     * middle third for good.
+     */
+    public final int spawnWidening;
+
+    /**
+     * A public constructor for {@code Rules}.
+     *
+     * @throws IllegalArgumentException if a constant is out of range, or if
+     *         the first apples and mines do not fit in the first level's
+     *         spawn window, which every later window contains
+     */
+    public Rules(final int snakeSize,
+                 final int appleQuantity,
+                 final int appleIncrement,
+                 final int mineQuantity,
+                 final int mineIncrement,
+                 final int mineIntroductionLevel,
+                 final int tailBiteQuantity,
+                 final int score,
+                 final int scoreIncrement,
+                 final int spawnWidening){
+        if(snakeSize < 1 || appleQuantity < 1 || appleIncrement < 0 || mineQuantity < 0 ||
+                mineIncrement < 0 || mineIntroductionLevel < 1 || tailBiteQuantity < 0 ||
+                scoreIncrement < 0 || spawnWidening < 0) {
+            throw new IllegalArgumentException("Rules out of range.");
+        }
+        final int window = Engine.spawnWindow(spawnWidening, 1);
+        if(appleQuantity + mineQuantity > window) {
+            throw new IllegalArgumentException(String.format(
+                    "%d apples and %d mines do not fit in the %d-cell spawn window of level 1.",
+                    appleQuantity, mineQuantity, window));
+        }
+        this.snakeSize = snakeSize;
+        this.appleQuantity = appleQuantity;
+        this.appleIncrement = appleIncrement;
+        this.mineQuantity = mineQuantity;
+        this.mineIncrement = mineIncrement;
+        this.mineIntroductionLevel = mineIntroductionLevel;
+        this.tailBiteQuantity = tailBiteQuantity;
+        this.score = score;
+        this.scoreIncrement = scoreIncrement;
+        this.spawnWidening = spawnWidening;
+    }
+
+    @Override
+    public String toString(){
+        return String.format(
+                "snake=%d apples=%d+%d mines=%d+%d@%d bites=%d score=%d+%d widening=%d",
+                snakeSize, appleQuantity, appleIncrement, mineQuantity, mineIncrement,
+                mineIntroductionLevel, tailBiteQuantity, score, scoreIncrement, spawnWidening
+        );
+    }
+
+}
@@ -0,0 +1,650 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Server
+ *
+ * <p>An authoritative, headless game host. A single {@code Engine} is ticked
+ * every {@code TICK_INTERVAL} milliseconds on one non-blocking NIO thread and
+ * every connected client is sent the per-tick changes to the board rather
+ * than the board itself. Full keyframes are only sent when a client joins,
+ * when a level starts and when a client falls too far behind to be sent
+ * deltas.
+ *
+ * <p>Client to server messages:
+ * <pre>
+ *   INPUT [int tick][byte direction ordinal]
+ *   PAUSE [int tick]
+ * </pre>
+ * Server to client frames:
+ * <pre>
+ *   [unsigned short frame length][int tick][byte GameStatus ordinal] op*
+ * </pre>
+ * where each op is one of {@code HEAD_ADDED [short cell]}, {@code TAIL_REMOVED},
+ * {@code APPLE_EATEN [short cell]}, {@code MINE_DETONATED [short cell]},
+ * {@code TAIL_BITTEN [byte remaining]}, {@code DIED [byte cause]} or a
+ * {@code KEYFRAME}. Cells are {@code Engine} cell indices.
+ *
+ * <p>Only the longest-connected client steers; everyone else spectates.
+ * The game's events are also kept in a {@link Journal}, so they can be
+ * followed off the tick thread; run from the command line, the server logs
+ * the end of each game from it.
+ */
+public final class Server {
+
+    /**
+     * Server constants.
+     */
+    public static final int DEFAULT_PORT;
+    public static final int TICK_INTERVAL;
+    public static final int RESTART_DELAY;
+    public static final int MAX_INPUT_LEAD;
+
+    /**
+     * Wire vocabulary.
+     */
+    public static final byte INPUT;
+    public static final byte PAUSE;
+    public static final byte HEAD_ADDED;
+    public static final byte TAIL_REMOVED;
+    public static final byte APPLE_EATEN;
+    public static final byte MINE_DETONATED;
+    public static final byte TAIL_BITTEN;
+    public static final byte DIED;
+    public static final byte KEYFRAME;
+
+    /*
+     * Buffer sizes. A client whose backlog would overflow its outbound buffer
+     * is dropped back to keyframes.
+     */
+    private static final int INBOUND_CAPACITY;
+    private static final int OUTBOUND_CAPACITY;
+    private static final int FRAME_CAPACITY;
+
+    /*
+     * Queued input codes: Direction ordinals, plus one for PAUSE.
+     */
+    private static final Game.GridPanel.Direction[] DIRECTIONS;
+    private static final int PAUSE_CODE;
+
+    /* init */
+    static {
+        DEFAULT_PORT = 7777;
+        TICK_INTERVAL = 20;
+        RESTART_DELAY = 50;
+        MAX_INPUT_LEAD = 64;
+        INPUT = 0x01;
+        PAUSE = 0x02;
+        HEAD_ADDED = 0x10;
+        TAIL_REMOVED = 0x11;
+        APPLE_EATEN = 0x12;
+        MINE_DETONATED = 0x13;
+        TAIL_BITTEN = 0x14;
+        DIED = 0x15;
+        KEYFRAME = 0x20;
+        INBOUND_CAPACITY = 256;
+        OUTBOUND_CAPACITY = 1 << 17;
+        FRAME_CAPACITY = (1 << 16) - 1;
+        DIRECTIONS = Game.GridPanel.Direction.values();
+        PAUSE_CODE = DIRECTIONS.length;
+    }
+
+    /*
+     * The authoritative game.
+     */
+    private final Engine engine;
+
+    /*
+     * The game's events, published as the Engine makes them.
+     */
+    private final Journal journal;
+
+    /*
+     * The non-blocking channels.
+     */
+    private final Selector selector;
+    private final ServerSocketChannel acceptor;
+
+    /*
+     * Connected clients, in order of connection. The first one steers.
+     */
+    private final List<Remote> remotes;
+
+    /*
+     * The frames sent this tick. The keyframe is only built if someone
+     * needs it.
+     */
+    private final ByteBuffer delta;
+    private final ByteBuffer keyframe;
+    private boolean keyframeBuilt;
+    private boolean levelStarted;
+
+    /*
+     * Inputs waiting for their tick, packed as (tick << 8 | code) and kept
+     * sorted by tick.
+     */
+    private final long[] pending;
+    private int pendingCount;
+
+    /*
+     * The server's own tick count, which keeps running across games.
+     */
+    private int serverTick;
+    private int restartTick;
+    private long games;
+
+    /**
+     * A public constructor for a {@code Server}.
+     *
+     * @param port the port to listen on, or {@code 0} for any free port
+     * @param seed the seed of the first game
+     * @throws IOException if the port cannot be bound
+     */
+    public Server(final int port, final long seed) throws IOException {
+        engine = new Engine(seed);
+        engine.setObserver(new DeltaWriter());
+        journal = new Journal(Journal.DEFAULT_CAPACITY);
+        journal.attach(engine);
+        games = seed;
+        selector = Selector.open();
+        acceptor = ServerSocketChannel.open();
+        acceptor.bind(new InetSocketAddress(port));
+        acceptor.configureBlocking(false);
+        acceptor.register(selector, SelectionKey.OP_ACCEPT);
+        remotes = new ArrayList<>();
+        delta = ByteBuffer.allocate(FRAME_CAPACITY);
+        keyframe = ByteBuffer.allocate(FRAME_CAPACITY);
+        pending = new long[MAX_INPUT_LEAD];
+        restartTick = -1;
+    }
+
+    /**
+     * Exposes the port this {@code Server} is listening on.
+     *
+     * @return the port
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) acceptor.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Exposes the {@code Journal} of this {@code Server}'s games. Its
+     * consumers are read on threads of their own.
+     *
+     * @return the journal
+     */
+    public Journal getJournal(){
+        return journal;
+    }
+
+    /**
+     * Runs the tick loop on the calling thread until it is interrupted.
+     */
+    public void run() throws IOException {
+        final long interval = TICK_INTERVAL * 1_000_000L;
+        long next = System.nanoTime();
+        try {
+            while(!Thread.currentThread().isInterrupted()) {
+                final long wait = (next - System.nanoTime()) / 1_000_000L;
+                if(wait > 0) selector.select(wait);
+                else selector.selectNow();
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if(!key.isValid()) continue;
+                    if(key.isAcceptable()) accept();
+                    else {
+                        final Remote r = (Remote) key.attachment();
+                        if(key.isReadable()) read(r);
+                        if(key.isValid() && key.isWritable()) flush(r);
+                    }
+                }
+                if(System.nanoTime() - next >= 0) {
+                    tick();
+                    next += interval;
+                }
+            }
+        } finally {
+            for(Remote r: remotes) r.channel.close();
+            acceptor.close();
+            selector.close();
+        }
+    }
+
+    /*
+     * Advances the game by one tick and sends the result to every client.
+     */
+    private void tick(){
+        serverTick++;
+        delta.clear();
+        keyframe.clear();
+        keyframeBuilt = false;
+        levelStarted = false;
+        delta.putShort((short) 0).putInt(serverTick).put((byte) 0);
+        applyInputs();
+        if(engine.getGameStatus() == Game.GridPanel.GameStatus.DONE) {
+            if(restartTick < 0) restartTick = serverTick + RESTART_DELAY;
+            else if(serverTick >= restartTick) {
+                engine.reset(++games);
+                restartTick = -1;
+                levelStarted = true;
+            }
+        }
+        engine.tick();
+        delta.put(6, (byte) engine.getGameStatus().ordinal());
+        delta.putShort(0, (short) (delta.position() - 2));
+        delta.flip();
+        for(int i = remotes.size() - 1; i >= 0; i--) {
+            final Remote r = remotes.get(i);
+            if(levelStarted) r.needsKeyframe = true;
+            final ByteBuffer frame = r.needsKeyframe? keyframe(): delta;
+            if(frame.remaining() > r.out.remaining()) {
+                //Drop the frames not yet started, keeping the rest of one already on the wire.
+                r.out.position(r.inFlight);
+                r.needsKeyframe = true;
+                continue;
+            }
+            r.out.put(frame.duplicate());
+            r.needsKeyframe = false;
+            flush(r);
+        }
+    }
+
+    /*
+     * Applies every pending input stamped for this tick or earlier. Late
+     * inputs are applied as soon as they arrive.
+     */
+    private void applyInputs(){
+        int applied = 0;
+        while(applied < pendingCount && (pending[applied] >> 8) <= serverTick) {
+            final int code = (int) (pending[applied++] & 0xFF);
+            if(code == PAUSE_CODE) engine.pause();
+            else engine.steer(DIRECTIONS[code]);
+        }
+        System.arraycopy(pending, applied, pending, 0, pendingCount -= applied);
+    }
+
+    /*
+     * Queues an input, keeping the queue sorted by tick. Inputs stamped too
+     * far ahead are dropped.
+     */
+    private void queue(final int tick, final int code){
+        if(pendingCount == pending.length || tick - serverTick > MAX_INPUT_LEAD) return;
+        final long packed = ((long) tick << 8) | code;
+        int i = pendingCount++;
+        while(i > 0 && (pending[i - 1] >> 8) > tick) {
+            pending[i] = pending[i - 1];
+            i--;
+        }
+        pending[i] = packed;
+    }
+
+    /*
+     * Builds this tick's keyframe, once.
+     */
+    private ByteBuffer keyframe(){
+        if(keyframeBuilt) return keyframe;
+        keyframeBuilt = true;
+        keyframe.putShort((short) 0).putInt(serverTick)
+                .put((byte) engine.getGameStatus().ordinal())
+                .put(KEYFRAME)
+                .putInt(engine.getLevel())
+                .putInt(engine.getScore())
+                .put((byte) engine.getTailBites())
+                .putInt(engine.getLegalSnakeSize())
+                .put((byte) engine.getDirection().ordinal());
+        keyframe.putShort((short) engine.length());
+        for(int i = 0; i < engine.length(); i++) keyframe.putShort((short) engine.segment(i));
+        keyframe.putShort((short) engine.appleCount());
+        for(int i = 0; i < engine.appleCount(); i++) keyframe.putShort((short) engine.apple(i));
+        keyframe.putShort((short) engine.mineCount());
+        for(int i = 0; i < engine.mineCount(); i++) {
+            final int c = engine.mine(i);
+            keyframe.putShort((short) ((engine.bits(c) & Engine.DETONATED) != 0? c | 0x8000: c));
+        }
+        keyframe.putShort(0, (short) (keyframe.position() - 2));
+        keyframe.flip();
+        return keyframe;
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = acceptor.accept();
+        if(channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        final Remote r = new Remote(channel);
+        r.key = channel.register(selector, SelectionKey.OP_READ, r);
+        remotes.add(r);
+    }
+
+    private void read(final Remote r){
+        try {
+            if(r.channel.read(r.in) < 0) {
+                drop(r);
+                return;
+            }
+        } catch(IOException e) {
+            drop(r);
+            return;
+        }
+        r.in.flip();
+        while(r.in.remaining() >= 5) {
+            final int start = r.in.position();
+            final byte op = r.in.get();
+            final int tick = r.in.getInt();
+            if(op == INPUT) {
+                if(!r.in.hasRemaining()) {
+                    r.in.position(start);
+                    break;
+                }
+                final int direction = r.in.get();
+                if(r == remotes.get(0) && direction >= 0 && direction < PAUSE_CODE) queue(tick, direction);
+            } else if(op == PAUSE) {
+                if(r == remotes.get(0)) queue(tick, PAUSE_CODE);
+            } else {
+                drop(r);
+                return;
+            }
+        }
+        r.in.compact();
+    }
+
+    private void flush(final Remote r){
+        r.out.flip();
+        try {
+            r.channel.write(r.out);
+        } catch(IOException e) {
+            drop(r);
+            return;
+        }
+        r.key.interestOps(r.out.hasRemaining()
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                : SelectionKey.OP_READ);
+        //Walk the frames written past to find the end of the one the write stopped in.
+        int end = r.inFlight;
+        while(end < r.out.position()) end += (r.out.getShort(end) & 0xFFFF) + 2;
+        r.inFlight = end - r.out.position();
+        r.out.compact();
+    }
+
+    private void drop(final Remote r){
+        remotes.remove(r);
+        r.key.cancel();
+        try {
+            r.channel.close();
+        } catch(IOException ignored) { }
+    }
+
+    /*
+     * A connected client.
+     */
+    private static final class Remote {
+        final SocketChannel channel;
+        final ByteBuffer in;
+        final ByteBuffer out;
+        SelectionKey key;
+        boolean needsKeyframe;
+        //The bytes at the front of out that finish a frame already partly sent.
+        int inFlight;
+
+        Remote(final SocketChannel channel){
+            this.channel = channel;
+            in = ByteBuffer.allocate(INBOUND_CAPACITY);
+            out = ByteBuffer.allocateDirect(OUTBOUND_CAPACITY);
+            needsKeyframe = true;
+        }
+    }
+
+    /*
+     * Translates Engine changes into delta ops. Spawns are left out, since a
+     * level start sends everyone a keyframe instead.
+     */
+    private final class DeltaWriter implements Engine.Observer {
+        @Override
+        public void headAdded(final int cell){
+            delta.put(HEAD_ADDED).putShort((short) cell);
+        }
+        @Override
+        public void tailRemoved(final int cell){
+            delta.put(TAIL_REMOVED);
+        }
+        @Override
+        public void appleEaten(final int cell){
+            delta.put(APPLE_EATEN).putShort((short) cell);
+        }
+        @Override
+        public void mineDetonated(final int cell){
+            delta.put(MINE_DETONATED).putShort((short) cell);
+        }
+        @Override
+        public void tailBitten(final int remaining){
+            delta.put(TAIL_BITTEN).put((byte) remaining);
+        }
+        @Override
+        public void levelStarted(final int level){
+            levelStarted = true;
+        }
+        @Override
+        public void died(final Engine.Cause cause){
+            delta.put(DIED).put((byte) cause.ordinal());
+        }
+    }
+
+    /**
+     * Mirror
+     *
+     * <p>A client-side copy of the board, rebuilt from a {@code Server}'s
+     * frames.
+     */
+    public static final class Mirror {
+
+        private final byte[] cells;
+        private int[] body;
+        private int tail;
+        private int length;
+        private int tick;
+        private int status;
+        private int level;
+        private int score;
+        private int tailBites;
+
+        public Mirror(){
+            cells = new byte[Engine.CELLS];
+            body = new int[64];
+        }
+
+        /**
+         * Applies one frame, without its length prefix.
+         *
+         * @param frame the frame
+         */
+        public void apply(final ByteBuffer frame){
+            tick = frame.getInt();
+            status = frame.get();
+            while(frame.hasRemaining()) {
+                final byte op = frame.get();
+                if(op == HEAD_ADDED) addHead(frame.getShort());
+                else if(op == TAIL_REMOVED) {
+                    cells[body[tail]]--;
+                    tail = (tail + 1) & (body.length - 1);
+                    length--;
+                }
+                else if(op == APPLE_EATEN) {
+                    cells[frame.getShort()] &= ~Engine.APPLE;
+                    score += Engine.SCORE_INCREMENT;
+                }
+                else if(op == MINE_DETONATED) cells[frame.getShort()] |= Engine.DETONATED;
+                else if(op == TAIL_BITTEN) tailBites = frame.get();
+                else if(op == DIED) frame.get();
+                else if(op == KEYFRAME) readKeyframe(frame);
+                else throw new IllegalStateException("Unknown op: " + op);
+            }
+        }
+
+        private void readKeyframe(final ByteBuffer frame){
+            java.util.Arrays.fill(cells, (byte) 0);
+            tail = 0;
+            length = 0;
+            level = frame.getInt();
+            score = frame.getInt();
+            tailBites = frame.get();
+            frame.getInt();
+            frame.get();
+            for(int i = frame.getShort(); i > 0; i--) addHead(frame.getShort());
+            for(int i = frame.getShort(); i > 0; i--) cells[frame.getShort()] |= Engine.APPLE;
+            for(int i = frame.getShort(); i > 0; i--) {
+                final int c = frame.getShort() & 0xFFFF;
+                cells[c & 0x7FFF] |= (c & 0x8000) != 0? Engine.MINE | Engine.DETONATED: Engine.MINE;
+            }
+        }
+
+        private void addHead(final int c){
+            if(length == body.length) {
+                final int[] grown = new int[body.length << 1];
+                for(int i = 0; i < length; i++) grown[i] = body[(tail + i) & (body.length - 1)];
+                body = grown;
+                tail = 0;
+            }
+            body[(tail + length++) & (body.length - 1)] = c;
+            cells[c]++;
+        }
+
+        public int bits(final int cell){
+            return cells[cell] & 0xFF;
+        }
+
+        /*
+         * Exposes the board itself, as Engine.board() does.
+         */
+        byte[] board(){
+            return cells;
+        }
+
+        public int length(){
+            return length;
+        }
+
+        public int head(){
+            return body[(tail + length - 1) & (body.length - 1)];
+        }
+
+        public int getTick(){
+            return tick;
+        }
+
+        public Game.GridPanel.GameStatus getGameStatus(){
+            return Game.GridPanel.GameStatus.values()[status];
+        }
+
+        public int getLevel(){
+            return level;
+        }
+
+        public int getScore(){
+            return score;
+        }
+
+        public int getTailBites(){
+            return tailBites;
+        }
+    }
+
+    /**
+     * Runs a {@code Server}, or with {@code --probe [host] [port] [ticks]}
+     * connects to one, mirrors its board and reports the bandwidth used.
+     */
+    public static void main(final String[] args) throws IOException {
+        if(args.length > 0 && args[0].equals("--probe")) {
+            probe(args.length > 1? args[1]: "localhost",
+                    args.length > 2? Integer.parseInt(args[2]): DEFAULT_PORT,
+                    args.length > 3? Integer.parseInt(args[3]): 500);
+            return;
+        }
+        final Server server = new Server(
+                args.length > 0? Integer.parseInt(args[0]): DEFAULT_PORT,
+                args.length > 1? Long.parseLong(args[1]): System.nanoTime()
+        );
+        System.out.printf("SneK server listening on port %d%n", server.getPort());
+        log(server.getJournal());
+        server.run();
+    }
+
+    /*
+     * Follows a journal on a daemon thread, printing the end of each game.
+     */
+    private static void log(final Journal journal){
+        final Journal.Consumer consumer = journal.subscribe();
+        final Journal.Listener listener = new Journal.Listener() {
+            private int level;
+            @Override
+            public void levelStarted(final int tick, final int level){
+                this.level = level;
+            }
+            @Override
+            public void died(final int tick, final Engine.Cause cause){
+                System.out.printf("Game over: %s on level %d after %d ticks%n", cause.title(), level, tick);
+            }
+            @Override
+            public void dropped(final long count){
+                System.out.printf("Game log fell behind by %d events%n", count);
+            }
+        };
+        final Thread logger = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while(true) {
+                    if(consumer.poll(listener, 256) == 0) LockSupport.parkNanos(TICK_INTERVAL * 1_000_000L);
+                }
+            }
+        }, "SneK-server-log");
+        logger.setDaemon(true);
+        logger.start();
+    }
+
+    /*
+     * A blocking loopback client that steers in a square and counts bytes.
+     */
+    private static void probe(final String host, final int port, final int ticks) throws IOException {
+        final Mirror mirror = new Mirror();
+        final ByteBuffer in = ByteBuffer.allocate(OUTBOUND_CAPACITY);
+        final ByteBuffer out = ByteBuffer.allocate(16);
+        long bytes = 0, keyframes = 0;
+        try(SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port))) {
+            for(int frames = 0; frames < ticks; ) {
+                if(channel.read(in) < 0) break;
+                in.flip();
+                while(in.remaining() >= 2 && in.remaining() >= 2 + (in.getShort(in.position()) & 0xFFFF)) {
+                    final int size = in.getShort() & 0xFFFF;
+                    final ByteBuffer frame = in.slice();
+                    frame.limit(size);
+                    if(size > 5 && frame.get(5) == KEYFRAME) keyframes++;
+                    mirror.apply(frame);
+                    in.position(in.position() + size);
+                    bytes += size + 2;
+                    frames++;
+                    if(frames % 12 == 0) {
+                        out.clear();
+                        out.put(INPUT).putInt(mirror.getTick() + 1).put((byte) ((frames / 12) & 3));
+                        out.flip();
+                        channel.write(out);
+                    }
+                }
+                in.compact();
+            }
+        }
+        System.out.printf("%d frames, %d keyframes, %.1f bytes/tick, level %d, score %d, length %d%n",
+                ticks, keyframes, bytes / (double) ticks,
+                mirror.getLevel(), mirror.getScore(), mirror.length());
+    }
+
+}
@@ -0,0 +1,615 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Session Host
+ *
+ * <p>Runs many headless games at once. Every {@code Session} is an
+ * {@code Engine} plus a {@code Pilot}, and all of them are timed by one
+ * hierarchical timing wheel on one timer thread. When a session's tick comes
+ * due, the timer thread hands it to a small pool of workers, so the cost of
+ * timing is O(1) per tick no matter how many sessions are live.
+ *
+ * <p>Sessions are created, paused, resumed and torn down from any thread;
+ * the requests are queued and carried out by the timer thread between ticks,
+ * never while the session's {@code Engine} is being ticked, and in the order
+ * each thread made them. A game that ends without a rematch stops counting
+ * as live.
+ */
+public final class SessionHost implements AutoCloseable {
+
+    /**
+     * Host constants.
+     */
+    public static final int DEFAULT_PERIOD;
+
+    /*
+     * Timing wheel geometry: LEVELS wheels of 2^WHEEL_BITS one-millisecond
+     * (then 64ms, 4s, ...) slots.
+     */
+    private static final int WHEEL_BITS;
+    private static final int WHEEL_SIZE;
+    private static final int WHEEL_MASK;
+    private static final int LEVELS;
+
+    /*
+     * The most sessions handed to a worker at once.
+     */
+    private static final int BATCH_SIZE;
+
+    /*
+     * Jitter histogram buckets, in powers of two microseconds.
+     */
+    private static final int JITTER_BUCKETS;
+
+    /*
+     * Session states.
+     */
+    private static final int IDLE;
+    private static final int BUSY;
+
+    /*
+     * Session requests, carried out by the timer thread.
+     */
+    private static final int CREATE;
+    private static final int PAUSE;
+    private static final int RESUME;
+    private static final int TEARDOWN;
+
+    private static final AtomicIntegerFieldUpdater<Session> STATE;
+
+    /* init */
+    static {
+        DEFAULT_PERIOD = Server.TICK_INTERVAL;
+        WHEEL_BITS = 6;
+        WHEEL_SIZE = 1 << WHEEL_BITS;
+        WHEEL_MASK = WHEEL_SIZE - 1;
+        LEVELS = 4;
+        JITTER_BUCKETS = 24;
+        BATCH_SIZE = 64;
+        IDLE = 0;
+        BUSY = 1;
+        CREATE = 0;
+        PAUSE = 1;
+        RESUME = 2;
+        TEARDOWN = 3;
+        STATE = AtomicIntegerFieldUpdater.newUpdater(Session.class, "state");
+    }
+
+    /**
+     * Pilot
+     *
+     * <p>Steers a session's snake. Invoked on a worker thread before every
+     * tick of the session.
+     */
+    public interface Pilot {
+
+        /**
+         * Steers the snake for the coming tick.
+         *
+         * @param engine the session's engine
+         */
+        void steer(Engine engine);
+
+        /**
+         * Decides whether a finished game should be followed by another.
+         *
+         * @param engine the session's engine, which is DONE
+         * @return whether or not to play again
+         */
+        default boolean rematch(final Engine engine){
+            return false;
+        }
+    }
+
+    /**
+     * Session
+     *
+     * <p>A game hosted by a {@code SessionHost}. Sessions are intrusive
+     * timing wheel entries, so scheduling one never allocates.
+     */
+    public static final class Session {
+
+        private final SessionHost host;
+        private final Engine engine;
+        private final Pilot pilot;
+        private final long id;
+        private final int period;
+        private long seed;
+        private int games;
+        private long deadline;
+        private long due;
+        private int slot;
+        private boolean scheduled;
+        private volatile boolean torn;
+        private boolean finished;
+        private long deferredPass;
+        private Session next;
+        private Session prev;
+        private volatile int state;
+
+        private Session(final SessionHost host, final long id, final long seed,
+                        final Pilot pilot, final int period){
+            this.host = host;
+            this.id = id;
+            this.seed = seed;
+            this.pilot = pilot;
+            this.period = period;
+            engine = new Engine(seed);
+        }
+
+        /*
+         * One tick, on a worker thread.
+         */
+        private void run(){
+            host.recordJitter(due);
+            try {
+                pilot.steer(engine);
+                if(!engine.tick() && engine.getGameStatus() == Game.GridPanel.GameStatus.DONE) {
+                    host.games.increment();
+                    if(pilot.rematch(engine)) {
+                        games++;
+                        engine.reset(++seed);
+                    }
+                }
+                host.ticks.increment();
+            } finally {
+                state = IDLE;
+            }
+        }
+
+        public long getId(){
+            return id;
+        }
+
+        /**
+         * Exposes the session's {@code Engine}. It is only safe to read while
+         * the session is paused.
+         *
+         * @return the engine
+         */
+        public Engine getEngine(){
+            return engine;
+        }
+
+        public int getGames(){
+            return games;
+        }
+
+        public boolean isTornDown(){
+            return torn;
+        }
+    }
+
+    /*
+     * The wheels: LEVELS * WHEEL_SIZE doubly-linked slot lists.
+     */
+    private final Session[] slots;
+
+    /*
+     * The wheel's notion of the current millisecond.
+     */
+    private long now;
+    private final long epoch;
+
+    /*
+     * Requests waiting for the timer thread.
+     */
+    private final ConcurrentLinkedQueue<Request> requests;
+
+    /*
+     * Requests put off because their session was being ticked, oldest first,
+     * and the number of passes over the requests so far. Only the timer
+     * thread touches these.
+     */
+    private final ArrayDeque<Request> deferred;
+    private long pass;
+
+    private final ExecutorService workers;
+    private Batch[] batches;
+    private int batchCount;
+    private Batch filling;
+    private final Thread timer;
+    private volatile boolean open;
+    private volatile int live;
+    private long nextId;
+
+    /*
+     * Metrics.
+     */
+    private final LongAdder ticks;
+    private final LongAdder games;
+    private final LongAdder overruns;
+    private final AtomicLongArray jitter;
+
+    /**
+     * A public constructor for a {@code SessionHost}.
+     *
+     * @param workers the number of threads that tick sessions
+     */
+    public SessionHost(final int workers){
+        slots = new Session[LEVELS * WHEEL_SIZE];
+        batches = new Batch[16];
+        requests = new ConcurrentLinkedQueue<>();
+        deferred = new ArrayDeque<>();
+        ticks = new LongAdder();
+        games = new LongAdder();
+        overruns = new LongAdder();
+        jitter = new AtomicLongArray(JITTER_BUCKETS);
+        this.workers = Executors.newFixedThreadPool(workers, r -> {
+            final Thread t = new Thread(r, "SneK-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        epoch = System.nanoTime();
+        open = true;
+        timer = new Thread(this::runTimer, "SneK-timer");
+        timer.setDaemon(true);
+        timer.start();
+    }
+
+    /**
+     * Creates and starts a session ticking every {@code DEFAULT_PERIOD}
+     * milliseconds.
+     *
+     * @param seed the seed of the session's first game
+     * @param pilot the session's pilot
+     * @return the session
+     */
+    public Session create(final long seed, final Pilot pilot){
+        return create(seed, pilot, DEFAULT_PERIOD);
+    }
+
+    /**
+     * Creates and starts a session.
+     *
+     * @param seed the seed of the session's first game
+     * @param pilot the session's pilot
+     * @param period the tick period in milliseconds
+     * @return the session
+     */
+    public synchronized Session create(final long seed, final Pilot pilot, final int period){
+        if(!open) throw new IllegalStateException("SessionHost is closed.");
+        if(period < 1) throw new IllegalArgumentException("Period must be at least 1ms.");
+        final Session s = new Session(this, nextId++, seed, pilot, period);
+        request(CREATE, s);
+        return s;
+    }
+
+    /**
+     * Pauses a session, setting its {@code GameStatus} to PAUSED.
+     */
+    public void pause(final Session s){
+        request(PAUSE, s);
+    }
+
+    /**
+     * Resumes a paused session.
+     */
+    public void resume(final Session s){
+        request(RESUME, s);
+    }
+
+    /**
+     * Stops a session for good.
+     */
+    public void teardown(final Session s){
+        request(TEARDOWN, s);
+    }
+
+    private void request(final int op, final Session s){
+        requests.add(new Request(op, s));
+        LockSupport.unpark(timer);
+    }
+
+    /*
+     * A request and the session it is for, queued as one item so that
+     * requests from different threads cannot interleave.
+     */
+    private static final class Request {
+        final int op;
+        final Session session;
+
+        Request(final int op, final Session session){
+            this.op = op;
+            this.session = session;
+        }
+    }
+
+    /**
+     * Exposes the number of live sessions.
+     */
+    public int size(){
+        return live;
+    }
+
+    public long getTicks(){
+        return ticks.sum();
+    }
+
+    public long getGames(){
+        return games.sum();
+    }
+
+    /**
+     * Exposes the number of ticks skipped because the previous tick of the
+     * same session was still running.
+     */
+    public long getOverruns(){
+        return overruns.sum();
+    }
+
+    /**
+     * Exposes a tick jitter percentile: how late ticks start relative to
+     * their deadline.
+     *
+     * @param p the percentile, in {@code [0, 1]}
+     * @return an upper bound on the jitter in microseconds
+     */
+    public long jitterPercentile(final double p){
+        long total = 0;
+        for(int i = 0; i < JITTER_BUCKETS; i++) total += jitter.get(i);
+        long seen = 0;
+        for(int i = 0; i < JITTER_BUCKETS; i++) {
+            seen += jitter.get(i);
+            if(seen >= total * p && seen > 0) return 1L << i;
+        }
+        return 1L << JITTER_BUCKETS;
+    }
+
+    private void recordJitter(final long deadline){
+        final long late = (System.nanoTime() - epoch) / 1000 - deadline * 1000;
+        final int bucket = late <= 1? 0: 64 - Long.numberOfLeadingZeros(late - 1);
+        jitter.getAndIncrement(Math.min(bucket, JITTER_BUCKETS - 1));
+    }
+
+    /**
+     * Stops every session and the threads that run them.
+     */
+    @Override
+    public void close(){
+        open = false;
+        LockSupport.unpark(timer);
+        try {
+            timer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * The timer thread: wakes every millisecond, carries out requests and
+     * turns the wheel.
+     */
+    private void runTimer(){
+        while(open) {
+            serveRequests();
+            final long target = (System.nanoTime() - epoch) / 1_000_000L;
+            while(now < target) {
+                now++;
+                cascade();
+                expire();
+            }
+            LockSupport.parkNanos(epoch + (now + 1) * 1_000_000L - System.nanoTime());
+        }
+    }
+
+    /*
+     * Carries out the requests put off last time and then the new ones.
+     * Once a session's request is put off, its later requests are put off
+     * behind it, so each session's requests are carried out in order.
+     */
+    private void serveRequests(){
+        pass++;
+        for(int n = deferred.size(); n > 0; n--) serve(deferred.poll());
+        for(int n = requests.size(); n > 0; n--) serve(requests.poll());
+    }
+
+    private void serve(final Request r){
+        final int op = r.op;
+        final Session s = r.session;
+        if(s.torn) return;
+        if(op != CREATE && (s.deferredPass == pass || s.state == BUSY)) {
+            s.deferredPass = pass;
+            deferred.add(r);
+            return;
+        }
+        final Game.GridPanel.GameStatus status = s.engine.getGameStatus();
+        if(op == CREATE) {
+            live++;
+            //Spread sessions across the period so their ticks don't bunch up.
+            s.deadline = now + 1 + s.id % s.period;
+            schedule(s);
+        } else if(op == PAUSE) {
+            if(status.isRunning()) s.engine.pause();
+            unschedule(s);
+        } else if(op == RESUME) {
+            if(status.isPaused()) s.engine.pause();
+            if(!s.scheduled && !s.finished) {
+                s.deadline = now + s.period;
+                schedule(s);
+            }
+        } else {
+            unschedule(s);
+            s.torn = true;
+            if(!s.finished) live--;
+        }
+    }
+
+    /*
+     * Expires the current millisecond's slot, handing due sessions to the
+     * workers and rescheduling them at a fixed rate.
+     */
+    private void expire(){
+        final int index = (int) (now & WHEEL_MASK);
+        Session s = slots[index];
+        slots[index] = null;
+        while(s != null) {
+            final Session next = s.next;
+            s.next = s.prev = null;
+            s.scheduled = false;
+            if(s.state == IDLE && s.engine.getGameStatus() == Game.GridPanel.GameStatus.DONE) {
+                //The game is over with no rematch: it is no longer live.
+                s.finished = true;
+                live--;
+                s = next;
+                continue;
+            }
+            if(STATE.compareAndSet(s, IDLE, BUSY)) {
+                s.due = s.deadline;
+                dispatch(s);
+            }
+            else overruns.increment();
+            s.deadline += s.period;
+            if(s.deadline <= now) s.deadline = now + 1;
+            schedule(s);
+            s = next;
+        }
+        if(filling != null) {
+            workers.execute(filling);
+            filling = null;
+        }
+    }
+
+    /*
+     * Adds a session to the batch being filled, handing the batch to the
+     * workers once it is full.
+     */
+    private void dispatch(final Session s){
+        if(filling == null) {
+            for(int i = 0; i < batchCount && filling == null; i++) {
+                if(!batches[i].busy) filling = batches[i];
+            }
+            if(filling == null) {
+                if(batchCount == batches.length) batches = Arrays.copyOf(batches, batchCount << 1);
+                filling = batches[batchCount++] = new Batch();
+            }
+            filling.busy = true;
+            filling.count = 0;
+        }
+        filling.sessions[filling.count++] = s;
+        if(filling.count == BATCH_SIZE) {
+            workers.execute(filling);
+            filling = null;
+        }
+    }
+
+    /*
+     * Sessions due in the same millisecond, ticked one after another on one
+     * worker so that handing them over costs one queue operation, not one
+     * per session.
+     */
+    private static final class Batch implements Runnable {
+        final Session[] sessions = new Session[BATCH_SIZE];
+        int count;
+        volatile boolean busy;
+
+        @Override
+        public void run(){
+            for(int i = 0; i < count; i++) {
+                sessions[i].run();
+                sessions[i] = null;
+            }
+            busy = false;
+        }
+    }
+
+    /*
+     * Moves the sessions of every outer slot whose time has come down
+     * the wheels.
+     */
+    private void cascade(){
+        int level = 1;
+        while(level < LEVELS && (now & ((1L << (WHEEL_BITS * level)) - 1)) == 0) level++;
+        for(int l = level - 1; l >= 1; l--) {
+            final int index = l * WHEEL_SIZE + (int) ((now >> (WHEEL_BITS * l)) & WHEEL_MASK);
+            Session s = slots[index];
+            slots[index] = null;
+            while(s != null) {
+                final Session next = s.next;
+                s.next = s.prev = null;
+                s.scheduled = false;
+                schedule(s);
+                s = next;
+            }
+        }
+    }
+
+    private void schedule(final Session s){
+        final long when = Math.min(Math.max(s.deadline, now + 1), now + (1L << (WHEEL_BITS * LEVELS)) - 1);
+        int level = 0;
+        while(level < LEVELS - 1 && when - now >= (1L << (WHEEL_BITS * (level + 1)))) level++;
+        final int index = level * WHEEL_SIZE + (int) ((when >> (WHEEL_BITS * level)) & WHEEL_MASK);
+        s.slot = index;
+        s.prev = null;
+        s.next = slots[index];
+        if(s.next != null) s.next.prev = s;
+        slots[index] = s;
+        s.scheduled = true;
+    }
+
+    private void unschedule(final Session s){
+        if(!s.scheduled) return;
+        if(s.prev != null) s.prev.next = s.next;
+        else slots[s.slot] = s.next;
+        if(s.next != null) s.next.prev = s.prev;
+        s.next = s.prev = null;
+        s.scheduled = false;
+    }
+
+    /**
+     * Hosts {@code [sessions]} games for {@code [seconds]} and reports
+     * throughput, jitter and memory per session.
+     */
+    public static void main(final String[] args) throws InterruptedException {
+        final int sessions = args.length > 0? Integer.parseInt(args[0]): 10_000;
+        final int seconds = args.length > 1? Integer.parseInt(args[1]): 10;
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final Runtime rt = Runtime.getRuntime();
+        System.gc();
+        final long before = rt.totalMemory() - rt.freeMemory();
+        try(SessionHost host = new SessionHost(threads)) {
+            for(int i = 0; i < sessions; i++) host.create(i, new Pilot() {
+                @Override
+                public void steer(final Engine e){
+                    final int ahead = e.bits(e.head() + Engine.offset(e.getDirection()));
+                    if((ahead & (Engine.WALL | Engine.BODY | Engine.MINE)) == 0) return;
+                    final boolean vertical = e.getDirection().isUp() || e.getDirection().isDown();
+                    final Game.GridPanel.Direction a = vertical? Game.GridPanel.Direction.LEFT: Game.GridPanel.Direction.UP;
+                    final Game.GridPanel.Direction b = vertical? Game.GridPanel.Direction.RIGHT: Game.GridPanel.Direction.DOWN;
+                    e.steer((e.bits(e.head() + Engine.offset(a)) & (Engine.WALL | Engine.BODY)) == 0? a: b);
+                }
+                @Override
+                public boolean rematch(final Engine e){
+                    return true;
+                }
+            });
+            Thread.sleep(1000);
+            System.gc();
+            final long after = rt.totalMemory() - rt.freeMemory();
+            final long start = host.getTicks();
+            Thread.sleep(seconds * 1000L);
+            System.out.printf("%d sessions on %d workers: %.0f ticks/s, %d games, %d overruns%n",
+                    host.size(), threads, (host.getTicks() - start) / (double) seconds,
+                    host.getGames(), host.getOverruns());
+            System.out.printf("jitter p50 <= %dus, p99 <= %dus, p99.9 <= %dus%n",
+                    host.jitterPercentile(0.5), host.jitterPercentile(0.99), host.jitterPercentile(0.999));
+            System.out.printf("~%d bytes per session%n", (after - before) / Math.max(1, sessions));
+        }
+    }
+
+}
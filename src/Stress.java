@@ -0,0 +1,489 @@
+import javax.swing.SwingUtilities;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Stress
+ *
+ * <p>A benchmark suite for the extremes normal play never reaches. Each
+ * {@link Scenario} stages a synthetic state directly on the
+ * {@code GridPanel}, through a private lookup kept to this class so that the
+ * game itself exposes nothing for it: a snake of fifty thousand segments coiled over itself, a
+ * board 95% full, hundreds of mines, a level transition at level sixty. The
+ * snake is steered along a {@code Hamiltonian} cycle so it never dies, and
+ * every tick runs the game's own hot paths headlessly: {@code update()},
+ * with its collision checks, {@code populatePixelElements()} and the move of
+ * the snake, and then {@code paint()}, with {@code paintSnake()}, onto an
+ * offscreen image.
+ *
+ * <p>Each scenario reports percentiles of update and paint latency and the
+ * bytes allocated per tick, and compares its p99s against a baseline file.
+ * A p99 more than the threshold above its baseline, and by more than timer
+ * noise, is a regression, and the suite exits with status 1.
+ *
+ * <p>Usage: {@code java Stress [--baseline file] [--threshold fraction]
+ * [--ticks n] [--warmup n] [--update] [scenario ...]}. The baseline defaults
+ * to {@code ~/.snek/stress-baseline.properties}; it is written when it does
+ * not exist, and rewritten with {@code --update}.
+ */
+public final class Stress {
+
+    /**
+     * Defaults: the fraction a p99 may grow by, and the ticks measured and
+     * run beforehand to warm up.
+     */
+    public static final double DEFAULT_THRESHOLD;
+    public static final int DEFAULT_TICKS;
+    public static final int DEFAULT_WARMUP;
+
+    /*
+     * A regression must also exceed its baseline by this much, so that paths
+     * measured in microseconds do not fail on timer jitter.
+     */
+    private static final long NOISE_FLOOR_NANOS;
+
+    /*
+     * The cycle the snake is steered along: Engine cells in cycle order, and
+     * each cell's position on it, or -1 off it.
+     */
+    private static final int[] ORDER;
+    private static final int[] POSITION;
+
+    /*
+     * The one cell off the cycle. Apples left there are never eaten.
+     */
+    private static final int SPARE_CELL;
+
+    /*
+     * Does nothing on the event dispatch thread, so that waiting for it
+     * waits for everything queued before it.
+     */
+    private static final Runnable DRAIN;
+
+    /*
+     * The GridPanel's private state and update(), reached by a private
+     * lookup rather than by hooks on the panel.
+     */
+    private static final VarHandle ENTITIES;
+    private static final VarHandle SCHEDULER;
+    private static final VarHandle DIRECTION;
+    private static final VarHandle LOCATION;
+    private static final VarHandle SNAKE_SIZE;
+    private static final VarHandle APPLES;
+    private static final VarHandle MINES;
+    private static final VarHandle TAIL_BITES;
+    private static final VarHandle LEVEL;
+    private static final VarHandle STATUS;
+    private static final MethodHandle UPDATE;
+
+    /* init */
+    static {
+        DEFAULT_THRESHOLD = 0.25;
+        DEFAULT_TICKS = 2000;
+        DEFAULT_WARMUP = 1000;
+        NOISE_FLOOR_NANOS = 50_000;
+        DRAIN = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        try {
+            final Class<Game.GridPanel> c = Game.GridPanel.class;
+            final MethodHandles.Lookup panel = MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+            ENTITIES = panel.findVarHandle(c, "entities", EntityStore.class);
+            SCHEDULER = panel.findVarHandle(c, "scheduler", TickScheduler.class);
+            DIRECTION = panel.findVarHandle(c, "currentDirection", Game.GridPanel.Direction.class);
+            LOCATION = panel.findVarHandle(c, "currentLocation", int.class);
+            SNAKE_SIZE = panel.findVarHandle(c, "legalSnakeSize", int.class);
+            APPLES = panel.findVarHandle(c, "legalNumberOfApples", int.class);
+            MINES = panel.findVarHandle(c, "legalNumberOfMines", int.class);
+            TAIL_BITES = panel.findVarHandle(c, "tailBites", int.class);
+            LEVEL = panel.findVarHandle(c, "level", int.class);
+            STATUS = panel.findVarHandle(c, "gameStatus", Game.GridPanel.GameStatus.class);
+            UPDATE = panel.findVirtual(c, "update", MethodType.methodType(void.class));
+        } catch(ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        final int[] table = Hamiltonian.cycle(Engine.COLUMNS, Engine.ROWS);
+        int start = 0, n = 0;
+        while(table[start] < 0) start++;
+        for(int g = start; n == 0 || g != start; g = table[g]) n++;
+        ORDER = new int[n];
+        POSITION = new int[Engine.CELLS];
+        Arrays.fill(POSITION, -1);
+        int spare = -1;
+        for(int g = 0; g < table.length; g++) if(table[g] < 0) spare = g;
+        SPARE_CELL = Engine.cell(spare % Engine.COLUMNS, spare / Engine.COLUMNS);
+        for(int i = 0, g = start; i < n; i++, g = table[g]) {
+            ORDER[i] = Engine.cell(g % Engine.COLUMNS, g / Engine.COLUMNS);
+            POSITION[ORDER[i]] = i;
+        }
+    }
+
+    /*
+     * Not instantiable.
+     */
+    private Stress(){}
+
+    /**
+     * Scenario
+     *
+     * <p>A synthetic state and how often it must be staged again: a snake
+     * steered along the cycle runs into what lies ahead of it eventually.
+     */
+    public enum Scenario {
+        /**
+         * A snake of 50,000 segments, wound ten times around the cycle, so
+         * every tick is a tail bite.
+         */
+        LONG_SNAKE("long-snake", Integer.MAX_VALUE) {
+            @Override
+            void stage(final Game.GridPanel panel){
+                Stress.stage(panel, body(49_999, 50_000), new int[]{SPARE_CELL}, new int[0], 1, direction(49_999));
+            }
+        },
+        /**
+         * A snake covering 95% of the cycle, chasing its tail around it.
+         */
+        DENSE_BOARD("dense-board", Integer.MAX_VALUE) {
+            @Override
+            void stage(final Game.GridPanel panel){
+                final int length = ORDER.length * 95 / 100;
+                Stress.stage(panel, body(length - 1, length), new int[]{SPARE_CELL}, new int[0], 5, direction(length - 1));
+            }
+        },
+        /**
+         * Four hundred mines ahead of a snake at level sixty, where every
+         * tick checks for a mine under the head. Staged again before the
+         * snake reaches them.
+         */
+        MINE_FIELD("mine-field", 1000) {
+            @Override
+            void stage(final Game.GridPanel panel){
+                final int head = 499, count = 400, first = head + 1001;
+                final int spacing = (ORDER.length - first) / count;
+                final int[] mines = new int[count];
+                for(int i = 0; i < count; i++) mines[i] = ORDER[first + i * spacing];
+                Stress.stage(panel, body(head, 500), new int[]{SPARE_CELL}, mines, 60, direction(head));
+            }
+        },
+        /**
+         * The move from level fifty-nine to sixty, populating 119 apples and
+         * 55 mines around a snake of 2,000 segments. Staged before every
+         * tick. The head is left in the last column, where apples and mines
+         * never spawn, so the snake cannot land on a new mine.
+         */
+        LEVEL_TRANSITION("level-transition", 1) {
+            @Override
+            void stage(final Game.GridPanel panel){
+                int head = 2000;
+                while(Engine.column(ORDER[head]) != Engine.COLUMNS - 1) head++;
+                Stress.stage(panel, body(head, 2000), new int[0], new int[0], 59, direction(head));
+            }
+        };
+
+        /**
+         * The name the scenario is selected and recorded by.
+         */
+        public final String title;
+
+        /*
+         * The ticks after which the scenario is staged again.
+         */
+        private final int period;
+
+        Scenario(final String title, final int period){
+            this.title = title;
+            this.period = period;
+        }
+
+        /*
+         * Stages the scenario on the panel.
+         */
+        abstract void stage(Game.GridPanel panel);
+
+        /**
+         * Finds a scenario by its title.
+         *
+         * @param title the title
+         * @return the scenario
+         * @throws IllegalArgumentException if there is none by that title
+         */
+        public static Scenario of(final String title){
+            for(Scenario s: values()) if(s.title.equals(title)) return s;
+            throw new IllegalArgumentException("No scenario " + title);
+        }
+
+    }
+
+    /**
+     * Result
+     *
+     * <p>What a run of a {@code Scenario} measured.
+     */
+    public static final class Result {
+
+        /**
+         * The scenario measured.
+         */
+        public final Scenario scenario;
+
+        /**
+         * Latencies of {@code update()} and {@code paint()}, in
+         * nanoseconds, sorted.
+         */
+        public final long[] update;
+        public final long[] paint;
+
+        /**
+         * The bytes allocated per tick, or -1 if the JVM does not say.
+         */
+        public final long allocated;
+
+        Result(final Scenario scenario, final long[] update, final long[] paint, final long allocated){
+            this.scenario = scenario;
+            this.update = update;
+            this.paint = paint;
+            this.allocated = allocated;
+            Arrays.sort(update);
+            Arrays.sort(paint);
+        }
+
+        /**
+         * Exposes a percentile of the sorted latencies.
+         *
+         * @param sorted the latencies
+         * @param p the percentile, from 0 to 100
+         * @return the latency, in nanoseconds
+         */
+        public static long percentile(final long[] sorted, final double p){
+            final int rank = (int) Math.ceil(sorted.length * p / 100) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+        }
+
+    }
+
+    /**
+     * Runs a scenario on the {@code GridPanel}, which must not be showing.
+     *
+     * @param scenario the scenario
+     * @param warmup the ticks to run before measuring
+     * @param ticks the ticks to measure
+     * @return the measurements
+     */
+    public static Result run(final Scenario scenario, final int warmup, final int ticks)
+            throws InterruptedException, InvocationTargetException {
+        final Game.GridPanel panel = Game.GridPanel.INSTANCE;
+        final BufferedImage image = new BufferedImage(Game.LENGTH, Game.LENGTH, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = image.createGraphics();
+        final long[] update = new long[ticks];
+        final long[] paint = new long[ticks];
+        final com.sun.management.ThreadMXBean threads = allocationCounter();
+        final long thread = Thread.currentThread().getId();
+        long allocated = 0;
+        try {
+            for(int t = 0; t < warmup + ticks; t++) {
+                if(t % scenario.period == 0) scenario.stage(panel);
+                synchronized(panel) {
+                    DIRECTION.set(panel, direction(POSITION[(int) LOCATION.get(panel)]));
+                }
+                final long a0 = threads == null? 0: threads.getThreadAllocatedBytes(thread);
+                final long t0 = System.nanoTime();
+                update(panel);
+                final long t1 = System.nanoTime();
+                panel.paint(g);
+                final long t2 = System.nanoTime();
+                final long a1 = threads == null? 0: threads.getThreadAllocatedBytes(thread);
+                if(!((Game.GridPanel.GameStatus) STATUS.get(panel)).isRunning()) throw new IllegalStateException(scenario.title + " died at tick " + t);
+                //Let the event dispatch thread catch up on anything update() queued, between samples.
+                SwingUtilities.invokeAndWait(DRAIN);
+                if(t == warmup - 1) System.gc();
+                if(t >= warmup) {
+                    update[t - warmup] = t1 - t0;
+                    paint[t - warmup] = t2 - t1;
+                    allocated += a1 - a0;
+                }
+            }
+        } finally {
+            g.dispose();
+            panel.reset();
+        }
+        return new Result(scenario, update, paint, threads == null? -1: allocated / ticks);
+    }
+
+    /*
+     * Replaces the panel's game with a synthetic state. The snake keeps its
+     * length and has unlimited tail-bites, so it can overlap itself; nothing
+     * is checked, so staging a head off the board ends the game on the next
+     * update.
+     */
+    private static void stage(final Game.GridPanel panel,
+                              final int[] body,
+                              final int[] appleCells,
+                              final int[] mineCells,
+                              final int level,
+                              final Game.GridPanel.Direction direction){
+        synchronized(panel) {
+            final EntityStore entities = (EntityStore) ENTITIES.get(panel);
+            entities.clear();
+            for(int c: body) entities.push(c);
+            for(int c: appleCells) entities.add(EntityStore.APPLE, c);
+            for(int c: mineCells) entities.add(EntityStore.MINE, c);
+            LOCATION.set(panel, body[body.length - 1]);
+            DIRECTION.set(panel, direction);
+            SNAKE_SIZE.set(panel, body.length);
+            //The quantities the next level will be populated with.
+            APPLES.set(panel, Game.GridPanel.DEFAULT_APPLE_QUANTITY + Game.GridPanel.APPLE_INCREMENT * level);
+            MINES.set(panel, Game.GridPanel.DEFAULT_MINE_QUANTITY + Game.GridPanel.MINE_INCREMENT
+                    * Math.max(0, level + 1 - Game.GridPanel.MINE_INTRODUCTION_LEVEL));
+            TAIL_BITES.set(panel, Integer.MAX_VALUE);
+            LEVEL.set(panel, level);
+            ((TickScheduler) SCHEDULER.get(panel)).setLevel(level);
+            STATUS.set(panel, Game.GridPanel.GameStatus.RUNNING);
+        }
+    }
+
+    /*
+     * Runs one of the panel's updates, as its game thread would.
+     */
+    private static void update(final Game.GridPanel panel){
+        try {
+            UPDATE.invokeExact(panel);
+        } catch(RuntimeException | Error e) {
+            throw e;
+        } catch(Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * The JVM's per-thread allocation counter, or null if it has none.
+     */
+    private static com.sun.management.ThreadMXBean allocationCounter(){
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if(!threads.isThreadAllocatedMemorySupported()) return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /*
+     * A snake of the given length along the cycle, from tail to the head at
+     * the given position, wrapping around the cycle as often as it must.
+     */
+    private static int[] body(final int head, final int length){
+        final int[] body = new int[length];
+        for(int i = 0; i < length; i++) {
+            body[i] = ORDER[Math.floorMod(head - length + 1 + i, ORDER.length)];
+        }
+        return body;
+    }
+
+    /*
+     * The direction from a position on the cycle to the next.
+     */
+    private static Game.GridPanel.Direction direction(final int position){
+        final int from = ORDER[position % ORDER.length];
+        final int to = ORDER[(position + 1) % ORDER.length];
+        for(Game.GridPanel.Direction d: Game.GridPanel.Direction.values()) {
+            if(from + Engine.offset(d) == to) return d;
+        }
+        throw new IllegalStateException("Cycle is broken at " + position);
+    }
+
+    /**
+     * Runs the suite and compares it against the baseline.
+     */
+    public static void main(final String[] args)
+            throws IOException, InterruptedException, InvocationTargetException {
+        if(System.getProperty("java.awt.headless") == null) System.setProperty("java.awt.headless", "true");
+        Path baseline = Paths.get(System.getProperty("user.home"), ".snek", "stress-baseline.properties");
+        double threshold = DEFAULT_THRESHOLD;
+        int ticks = DEFAULT_TICKS, warmup = DEFAULT_WARMUP;
+        boolean update = false;
+        final List<Scenario> scenarios = new ArrayList<>();
+        for(int i = 0; i < args.length; i++) {
+            switch(args[i]) {
+                case "--baseline": baseline = Paths.get(args[++i]); break;
+                case "--threshold": threshold = Double.parseDouble(args[++i]); break;
+                case "--ticks": ticks = Integer.parseInt(args[++i]); break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--update": update = true; break;
+                default: scenarios.add(Scenario.of(args[i]));
+            }
+        }
+        if(scenarios.isEmpty()) scenarios.addAll(Arrays.asList(Scenario.values()));
+        final Properties base = new Properties();
+        final boolean record = update || !Files.exists(baseline);
+        if(!record) {
+            try(InputStream in = Files.newInputStream(baseline)) {
+                base.load(in);
+            }
+        }
+        System.out.printf("%-17s %10s %10s %10s %10s %10s %12s%n",
+                "scenario", "update p50", "p99", "max", "paint p50", "p99", "bytes/tick");
+        int regressions = 0;
+        for(Scenario s: scenarios) {
+            final Result r = run(s, warmup, ticks);
+            final long updateP99 = Result.percentile(r.update, 99), paintP99 = Result.percentile(r.paint, 99);
+            System.out.printf("%-17s %10s %10s %10s %10s %10s %12d%n", s.title,
+                    micros(Result.percentile(r.update, 50)), micros(updateP99), micros(r.update[r.update.length - 1]),
+                    micros(Result.percentile(r.paint, 50)), micros(paintP99), r.allocated);
+            regressions += compare(base, s.title + ".update.p99", updateP99, threshold, record);
+            regressions += compare(base, s.title + ".paint.p99", paintP99, threshold, record);
+        }
+        if(record) {
+            if(baseline.getParent() != null) Files.createDirectories(baseline.getParent());
+            try(OutputStream out = Files.newOutputStream(baseline)) {
+                base.store(out, "Stress p99 baselines, in nanoseconds");
+            }
+            System.out.println("Baseline recorded to " + baseline);
+        }
+        System.out.println(regressions == 0? "No regressions.": regressions + " regression(s).");
+        System.exit(regressions == 0? 0: 1);
+    }
+
+    /*
+     * Compares a p99 with its baseline, reporting and counting a regression,
+     * or sets the baseline if recording.
+     */
+    private static int compare(final Properties base,
+                               final String key,
+                               final long p99,
+                               final double threshold,
+                               final boolean record){
+        if(record) {
+            base.setProperty(key, Long.toString(p99));
+            return 0;
+        }
+        final String recorded = base.getProperty(key);
+        if(recorded == null) return 0;
+        final long was = Long.parseLong(recorded);
+        if(p99 <= was * (1 + threshold) || p99 - was <= NOISE_FLOOR_NANOS) return 0;
+        System.out.printf("  REGRESSION %s: p99 %s, baseline %s (+%.0f%%)%n",
+                key, micros(p99), micros(was), 100.0 * (p99 - was) / was);
+        return 1;
+    }
+
+    private static String micros(final long nanos){
+        return String.format("%.1fus", nanos / 1e3);
+    }
+
+}
@@ -0,0 +1,412 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Terminal Renderer
+ *
+ * <p>Draws a board on an ANSI terminal, for watching games on machines with
+ * no display, such as over SSH. Each terminal cell shows two cells of the
+ * board, one above the other, as an upper half block in the top cell's
+ * color on the bottom cell's color, so the whole board fits in
+ * {@link #COLUMNS} by {@link #ROWS} characters. Colors are the
+ * {@code Palette}'s, in 24-bit color.
+ *
+ * <p>The renderer remembers what the terminal shows and each frame writes
+ * only the cells that changed: a cursor move when a change is not right
+ * after the last one written, a color change only when the color differs
+ * from the last one set, and the character. A frame is built in a buffer
+ * and written with a single call, and drawing the board allocates nothing,
+ * so one host can stream many sessions at the game's 50Hz.
+ */
+public final class TerminalRenderer {
+
+    /**
+     * The size of the board on the terminal, in characters, not counting
+     * the status line below it.
+     */
+    public static final int COLUMNS;
+    public static final int ROWS;
+
+    /*
+     * Escape sequences, precomputed: ESC [, and the color selections for
+     * each Palette index in the foreground and the background.
+     */
+    private static final byte[] CSI;
+    private static final byte[][] FOREGROUND;
+    private static final byte[][] BACKGROUND;
+    private static final byte[] UPPER_HALF;
+    private static final byte[] RESET;
+
+    /*
+     * The color index of cells the terminal has not been sent yet.
+     */
+    private static final byte UNKNOWN;
+
+    /*
+     * The Palette index a cell is drawn in, by its bits, were it not the
+     * head. Blasts cover mines, which cover apples, which cover the body.
+     */
+    private static final byte[] COLOR_OF;
+
+    /* init */
+    static {
+        COLUMNS = Engine.COLUMNS;
+        ROWS = (Engine.ROWS + 1) / 2;
+        CSI = "\033[".getBytes(StandardCharsets.US_ASCII);
+        FOREGROUND = new byte[Palette.SIZE][];
+        BACKGROUND = new byte[Palette.SIZE][];
+        for(int i = 0; i < Palette.SIZE; i++) {
+            final int rgb = Palette.rgb(i);
+            final String color = (rgb >> 16) + ";" + (rgb >> 8 & 0xFF) + ";" + (rgb & 0xFF) + "m";
+            FOREGROUND[i] = ("\033[38;2;" + color).getBytes(StandardCharsets.US_ASCII);
+            BACKGROUND[i] = ("\033[48;2;" + color).getBytes(StandardCharsets.US_ASCII);
+        }
+        UPPER_HALF = "\u2580".getBytes(StandardCharsets.UTF_8);
+        RESET = "\033[0m".getBytes(StandardCharsets.US_ASCII);
+        UNKNOWN = -1;
+        COLOR_OF = new byte[256];
+        for(int bits = 0; bits < COLOR_OF.length; bits++) {
+            COLOR_OF[bits] = (byte) ((bits & Engine.DETONATED) != 0? Palette.BLAST:
+                    (bits & Engine.MINE) != 0? Palette.MINE:
+                    (bits & Engine.APPLE) != 0? Palette.APPLE:
+                    (bits & Engine.BODY) != 0? Palette.SEGMENT: Palette.BACKGROUND);
+        }
+    }
+
+    private final OutputStream out;
+
+    /*
+     * Where the board's top-left character is on the terminal, 1-based.
+     */
+    private final int top;
+    private final int left;
+
+    /*
+     * The color index of each cell of the board, as shown and as about to
+     * be shown, row-major over COLUMNS by 2 * ROWS cells.
+     */
+    private final byte[] shown;
+    private final byte[] next;
+
+    /*
+     * The frame being built.
+     */
+    private byte[] buffer;
+    private int length;
+
+    /*
+     * The terminal's cursor and colors as the frame leaves them, or -1 if
+     * not known.
+     */
+    private int cursorRow;
+    private int cursorColumn;
+    private int foreground;
+    private int background;
+
+    /*
+     * The status line as shown.
+     */
+    private int shownLevel;
+    private int shownScore;
+    private int shownTailBites;
+    private Game.GridPanel.GameStatus shownStatus;
+
+    /*
+     * Totals.
+     */
+    private long frames;
+    private long bytes;
+
+    /**
+     * A public constructor for a {@code TerminalRenderer} drawing at the
+     * top-left corner of the terminal.
+     *
+     * @param out the terminal
+     */
+    public TerminalRenderer(final OutputStream out){
+        this(out, 1, 1);
+    }
+
+    /**
+     * A public constructor for a {@code TerminalRenderer}.
+     *
+     * @param out the terminal
+     * @param top the terminal row to draw the board from, 1-based
+     * @param left the terminal column to draw the board from, 1-based
+     */
+    public TerminalRenderer(final OutputStream out, final int top, final int left){
+        if(top < 1 || left < 1) throw new IllegalArgumentException("Terminal positions are 1-based.");
+        this.out = out;
+        this.top = top;
+        this.left = left;
+        shown = new byte[COLUMNS * ROWS * 2];
+        next = new byte[shown.length];
+        buffer = new byte[1 << 12];
+        invalidate();
+    }
+
+    /**
+     * Forgets what the terminal shows, so the next frame draws everything,
+     * as after the screen has been cleared.
+     */
+    public void invalidate(){
+        Arrays.fill(shown, UNKNOWN);
+        cursorRow = cursorColumn = foreground = background = -1;
+        shownLevel = shownScore = shownTailBites = -1;
+        shownStatus = null;
+    }
+
+    /**
+     * Draws an {@code Engine}'s board and score.
+     *
+     * @param engine the engine
+     * @throws IOException if the terminal cannot be written to
+     */
+    public void render(final Engine engine) throws IOException {
+        render(engine.board(), engine.length() > 0? engine.head(): -1, engine.getLevel(), engine.getScore(),
+                engine.getTailBites(), engine.getGameStatus());
+    }
+
+    /**
+     * Draws a board mirrored from a {@code Server}, and its score.
+     *
+     * @param mirror the mirror
+     * @throws IOException if the terminal cannot be written to
+     */
+    public void render(final Server.Mirror mirror) throws IOException {
+        render(mirror.board(), mirror.length() > 0? mirror.head(): -1, mirror.getLevel(), mirror.getScore(),
+                mirror.getTailBites(), mirror.getGameStatus());
+    }
+
+    private void render(final byte[] cells,
+                        final int head,
+                        final int level,
+                        final int score,
+                        final int tailBites,
+                        final Game.GridPanel.GameStatus status) throws IOException {
+        length = 0;
+        for(int y = 0, i = 0; y < Engine.ROWS; y++) {
+            for(int c = Engine.cell(0, y), end = c + COLUMNS; c < end; c++, i++) next[i] = COLOR_OF[cells[c] & 0xFF];
+        }
+        Arrays.fill(next, Engine.ROWS * COLUMNS, next.length, (byte) Palette.BACKGROUND);
+        //The head is drawn as such unless something covers it.
+        if(head >= 0) {
+            final int i = Engine.row(head) * COLUMNS + Engine.column(head);
+            if(next[i] == Palette.SEGMENT) next[i] = (byte) Palette.HEAD;
+        }
+        for(int i = Arrays.mismatch(shown, next); i >= 0; ) {
+            final int x = i % COLUMNS, row = i / COLUMNS >> 1;
+            final int upper = (row << 1) * COLUMNS + x, lower = upper + COLUMNS;
+            cell(row, x, next[upper], next[lower]);
+            shown[upper] = next[upper];
+            shown[lower] = next[lower];
+            final int from = i + 1;
+            final int m = Arrays.mismatch(shown, from, shown.length, next, from, next.length);
+            i = m < 0? -1: from + m;
+        }
+        if(level != shownLevel || score != shownScore || tailBites != shownTailBites || status != shownStatus) {
+            shownLevel = level;
+            shownScore = score;
+            shownTailBites = tailBites;
+            shownStatus = status;
+            move(ROWS, 0);
+            put(RESET);
+            foreground = background = -1;
+            put(String.format("Level: %d   Score: %d   Tail Bites: %d%s", level, score, tailBites,
+                    status.isRunning()? "": status.isPaused()? "   Paused": "   Game over")
+                    .getBytes(StandardCharsets.US_ASCII));
+            put(CSI);
+            put('K');
+            cursorColumn = -1;
+        }
+        if(length > 0) {
+            out.write(buffer, 0, length);
+            out.flush();
+            bytes += length;
+        }
+        frames++;
+    }
+
+    /*
+     * Writes one character: a space if both halves are the same color, so
+     * only the background need be right, or an upper half block if not.
+     */
+    private void cell(final int row, final int column, final int upper, final int lower){
+        move(row, column);
+        if(background != lower) {
+            put(BACKGROUND[lower]);
+            background = lower;
+        }
+        if(upper == lower) {
+            put(' ');
+        } else {
+            if(foreground != upper) {
+                put(FOREGROUND[upper]);
+                foreground = upper;
+            }
+            put(UPPER_HALF);
+        }
+        cursorColumn++;
+    }
+
+    /*
+     * Moves the cursor to a character of the board, unless it is there.
+     */
+    private void move(final int row, final int column){
+        if(row == cursorRow && column == cursorColumn) return;
+        put(CSI);
+        number(top + row);
+        put(';');
+        number(left + column);
+        put('H');
+        cursorRow = row;
+        cursorColumn = column;
+    }
+
+    private void number(final int n){
+        if(n >= 10) number(n / 10);
+        put('0' + n % 10);
+    }
+
+    private void put(final int b){
+        if(length == buffer.length) buffer = Arrays.copyOf(buffer, length << 1);
+        buffer[length++] = (byte) b;
+    }
+
+    private void put(final byte[] b){
+        if(length + b.length > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(length << 1, length + b.length));
+        System.arraycopy(b, 0, buffer, length, b.length);
+        length += b.length;
+    }
+
+    /**
+     * Exposes the number of frames rendered.
+     */
+    public long frames(){
+        return frames;
+    }
+
+    /**
+     * Exposes the number of bytes written.
+     */
+    public long bytes(){
+        return bytes;
+    }
+
+    /**
+     * Watches a game on the terminal. With no arguments, or {@code [seed]},
+     * the {@code Autopilot} plays locally at the game's speed. With
+     * {@code --watch [host] [port]}, a {@code Server}'s game is mirrored; the
+     * server lets its longest-connected client steer, so connect once
+     * another client has. With {@code --bench [sessions] [ticks]}, that many
+     * games are rendered to nowhere and the cost of a frame is reported.
+     */
+    public static void main(final String[] args) throws IOException {
+        if(args.length > 0 && args[0].equals("--bench")) {
+            bench(args.length > 1? Integer.parseInt(args[1]): 48, args.length > 2? Integer.parseInt(args[2]): 3000);
+            return;
+        }
+        final TerminalRenderer renderer = new TerminalRenderer(System.out);
+        System.out.print("\033[2J\033[?25l");
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                System.out.print("\033[0m\033[?25h\n");
+                System.out.flush();
+            }
+        }));
+        if(args.length > 0 && args[0].equals("--watch")) {
+            watch(renderer, args.length > 1? args[1]: "localhost",
+                    args.length > 2? Integer.parseInt(args[2]): Server.DEFAULT_PORT);
+            return;
+        }
+        long seed = args.length > 0? Long.parseLong(args[0]): System.nanoTime();
+        final Engine engine = new Engine(seed);
+        final Autopilot pilot = new Autopilot();
+        final long interval = Server.TICK_INTERVAL * 1_000_000L;
+        long next = System.nanoTime();
+        while(true) {
+            pilot.steer(engine);
+            if(!engine.tick()) engine.reset(++seed);
+            renderer.render(engine);
+            next += interval;
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+    }
+
+    /*
+     * Mirrors a Server's frames onto the terminal.
+     */
+    private static void watch(final TerminalRenderer renderer, final String host, final int port) throws IOException {
+        final Server.Mirror mirror = new Server.Mirror();
+        final ByteBuffer in = ByteBuffer.allocate(1 << 16);
+        try(SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port))) {
+            while(channel.read(in) >= 0) {
+                in.flip();
+                boolean applied = false;
+                while(in.remaining() >= 2 && in.remaining() >= 2 + (in.getShort(in.position()) & 0xFFFF)) {
+                    final int size = in.getShort() & 0xFFFF;
+                    final ByteBuffer frame = in.slice();
+                    frame.limit(size);
+                    mirror.apply(frame);
+                    in.position(in.position() + size);
+                    applied = true;
+                }
+                in.compact();
+                //Frames that arrived together are drawn as one.
+                if(applied) renderer.render(mirror);
+            }
+        }
+    }
+
+    /*
+     * Renders many Autopilot games, one renderer each, into a stream that
+     * only counts, and reports the cost per frame.
+     */
+    private static void bench(final int sessions, final int ticks) throws IOException {
+        final OutputStream nowhere = new OutputStream() {
+            @Override
+            public void write(final int b) {
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) {
+            }
+        };
+        final Engine[] engines = new Engine[sessions];
+        final TerminalRenderer[] renderers = new TerminalRenderer[sessions];
+        final Autopilot pilot = new Autopilot();
+        for(int s = 0; s < sessions; s++) {
+            engines[s] = new Engine(s);
+            renderers[s] = new TerminalRenderer(nowhere);
+        }
+        long render = 0;
+        for(int t = 0; t < ticks; t++) {
+            for(int s = 0; s < sessions; s++) {
+                pilot.steer(engines[s]);
+                if(!engines[s].tick()) engines[s].reset(engines[s].getTick() + s * 31L);
+            }
+            final long t0 = System.nanoTime();
+            for(int s = 0; s < sessions; s++) renderers[s].render(engines[s]);
+            render += System.nanoTime() - t0;
+        }
+        long bytes = 0, frames = 0;
+        for(TerminalRenderer r: renderers) {
+            bytes += r.bytes();
+            frames += r.frames();
+        }
+        final double perFrame = render / (double) frames;
+        System.out.printf("%d sessions x %d ticks: %.1fus and %.0f bytes per frame; at %dHz that is %.2f%% of a core"
+                        + " and %.1f KB/s per session%n",
+                sessions, ticks, perFrame / 1e3, bytes / (double) frames, 1000 / Server.TICK_INTERVAL,
+                perFrame * sessions * (1000 / Server.TICK_INTERVAL) / 1e7,
+                bytes / (double) frames * (1000 / Server.TICK_INTERVAL) / 1024);
+    }
+
+}
@@ -0,0 +1,202 @@
+/**
+ * Tick Scheduler
+ *
+ * <p>Paces game ticks against a frame clock, at a tick period that shortens
+ * as the level rises. Frames arrive at whatever rate the display runs at;
+ * each frame adds the time since the last one to an accumulator, and a tick
+ * is due for every full period in it. When the period is shorter than the
+ * frame interval several ticks run in one frame, and what is left over is
+ * the fraction of a tick to {@link #alpha() interpolate} the rendering by.
+ *
+ * <p>Time is kept in whole nanoseconds and a tick only ever consumes its own
+ * period, so no time is lost or double-counted when the period changes: a
+ * new period applies from the next tick on, even within a frame. The game
+ * state depends only on the number of ticks and the input between them,
+ * never on the period, so replays and simulations of the same ticks come
+ * out the same at any speed.
+ *
+ * <p>After a stall too long to catch up on within {@link #MAX_TICKS_PER_FRAME}
+ * ticks, the time that does not fit is dropped rather than run in a burst.
+ */
+public final class TickScheduler {
+
+    /**
+     * The default curve: the period at level one (the game's original
+     * speed), the fraction it keeps with each level, and the shortest it
+     * gets, in nanoseconds.
+     */
+    public static final long DEFAULT_BASE_PERIOD;
+    public static final double DEFAULT_SPEEDUP;
+    public static final long DEFAULT_MIN_PERIOD;
+
+    /**
+     * The most ticks run in one frame.
+     */
+    public static final int MAX_TICKS_PER_FRAME;
+
+    /* init */
+    static {
+        DEFAULT_BASE_PERIOD = 20_000_000L;
+        DEFAULT_SPEEDUP = 0.97;
+        DEFAULT_MIN_PERIOD = 6_000_000L;
+        MAX_TICKS_PER_FRAME = 8;
+    }
+
+    /*
+     * The curve.
+     */
+    private final long basePeriod;
+    private final double speedup;
+    private final long minPeriod;
+
+    /*
+     * The current period, the time accumulated toward the next tick, and
+     * the frame clock's last reading.
+     */
+    private long period;
+    private long accumulated;
+    private long last;
+    private boolean started;
+
+    /*
+     * The ticks run in the current frame and in all.
+     */
+    private int frameTicks;
+    private long ticks;
+
+    /**
+     * A public constructor for a {@code TickScheduler} on the default curve.
+     */
+    public TickScheduler(){
+        this(DEFAULT_BASE_PERIOD, DEFAULT_SPEEDUP, DEFAULT_MIN_PERIOD);
+    }
+
+    /**
+     * A public constructor for a {@code TickScheduler}.
+     *
+     * @param basePeriod the period at level one, in nanoseconds
+     * @param speedup the fraction of the period kept with each level, in
+     *                {@code (0, 1]}
+     * @param minPeriod the shortest period, in nanoseconds
+     */
+    public TickScheduler(final long basePeriod, final double speedup, final long minPeriod){
+        if(minPeriod < 1 || basePeriod < minPeriod) throw new IllegalArgumentException("Periods out of range.");
+        if(!(speedup > 0 && speedup <= 1)) throw new IllegalArgumentException("Speedup out of range.");
+        this.basePeriod = basePeriod;
+        this.speedup = speedup;
+        this.minPeriod = minPeriod;
+        period = basePeriod;
+    }
+
+    /**
+     * The tick period at a level on this scheduler's curve.
+     *
+     * @param level the level; levels below one run at level one's period
+     * @return the period, in nanoseconds
+     */
+    public long periodFor(final int level){
+        final double p = basePeriod * Math.pow(speedup, Math.max(0, level - 1));
+        return Math.max(minPeriod, (long) p);
+    }
+
+    /**
+     * Sets the level, which sets the period from the next tick on.
+     *
+     * @param level the level
+     */
+    public void setLevel(final int level){
+        period = periodFor(level);
+    }
+
+    /**
+     * Exposes the current tick period.
+     *
+     * @return the period, in nanoseconds
+     */
+    public long period(){
+        return period;
+    }
+
+    /**
+     * Starts a frame, adding the time since the last one.
+     *
+     * @param now the frame clock, in nanoseconds
+     */
+    public void frame(final long now){
+        if(started) accumulated += now - last;
+        started = true;
+        last = now;
+        frameTicks = 0;
+    }
+
+    /**
+     * Starts a frame in which no time passes, as while the game is paused,
+     * so that the pause is not made up for with a burst of ticks.
+     *
+     * @param now the frame clock, in nanoseconds
+     */
+    public void idle(final long now){
+        started = true;
+        last = now;
+        frameTicks = 0;
+    }
+
+    /**
+     * Takes the next tick due in this frame, if any. Call until it returns
+     * false, ticking once for each true.
+     *
+     * @return whether a tick is due
+     */
+    public boolean next(){
+        if(accumulated < period) return false;
+        if(frameTicks == MAX_TICKS_PER_FRAME) {
+            //Too far behind to catch up: drop all but the fraction of a tick.
+            accumulated %= period;
+            return false;
+        }
+        accumulated -= period;
+        frameTicks++;
+        ticks++;
+        return true;
+    }
+
+    /**
+     * Exposes how far the frame is between the last tick and the next, for
+     * interpolating the rendering.
+     *
+     * @return the fraction of the period accumulated, in {@code [0, 1)}
+     */
+    public double alpha(){
+        return Math.min(accumulated, period - 1) / (double) period;
+    }
+
+    /**
+     * Exposes the number of ticks run in the current frame.
+     *
+     * @return the ticks
+     */
+    public int frameTicks(){
+        return frameTicks;
+    }
+
+    /**
+     * Exposes the number of ticks run since construction or the last reset.
+     *
+     * @return the ticks
+     */
+    public long ticks(){
+        return ticks;
+    }
+
+    /**
+     * Starts over at level one, with nothing accumulated.
+     */
+    public void reset(){
+        period = basePeriod;
+        accumulated = 0;
+        started = false;
+        frameTicks = 0;
+        ticks = 0;
+    }
+
+}
@@ -0,0 +1,362 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Vectorized Environment
+ *
+ * <p>A Gym-style training environment that steps {@code K} independent
+ * {@code Engine}s in lockstep. Observations for every game live in one
+ * preallocated direct {@code ByteBuffer} of native-order floats, laid out
+ * {@code [game][channel][row][column]} over the {@code Engine.COLUMNS} by
+ * {@code Engine.ROWS} board, with one channel each for the body, the head,
+ * apples and mines. Rewards and done flags live in parallel primitive
+ * arrays.
+ *
+ * <p>Observations are kept up to date from each {@code Engine}'s
+ * {@code Observer} callbacks, so a step writes only the cells that changed.
+ * A new game is populated before it is observed, so the first observation
+ * of an episode shows the snake, apples and mines. Games that finish are
+ * reset in the same step: the observation returned is that of the new game,
+ * and the last one of the finished game is kept in the terminal
+ * observations, as Gym's vectorized environments hand it back. Stepping is split across worker threads that are
+ * handed work by park/unpark, so once the engines have grown to size a step
+ * allocates nothing.
+ */
+public final class VecEnv implements AutoCloseable {
+
+    /**
+     * Observation channels.
+     */
+    public static final int BODY_CHANNEL;
+    public static final int HEAD_CHANNEL;
+    public static final int APPLE_CHANNEL;
+    public static final int MINE_CHANNEL;
+    public static final int CHANNELS;
+
+    /**
+     * The number of floats in one game's observation.
+     */
+    public static final int PLANE;
+    public static final int OBSERVATION_SIZE;
+
+    /**
+     * Rewards.
+     */
+    public static final float APPLE_REWARD;
+    public static final float DEATH_REWARD;
+
+    /*
+     * Actions, by Direction ordinal.
+     */
+    private static final Game.GridPanel.Direction[] DIRECTIONS;
+
+    /* init */
+    static {
+        BODY_CHANNEL = 0;
+        HEAD_CHANNEL = 1;
+        APPLE_CHANNEL = 2;
+        MINE_CHANNEL = 3;
+        CHANNELS = 4;
+        PLANE = Engine.COLUMNS * Engine.ROWS;
+        OBSERVATION_SIZE = CHANNELS * PLANE;
+        APPLE_REWARD = 1f;
+        DEATH_REWARD = -1f;
+        DIRECTIONS = Game.GridPanel.Direction.values();
+    }
+
+    /*
+     * The games, and the observers that write their observations.
+     */
+    private final Engine[] engines;
+    private final Writer[] writers;
+    private final int size;
+
+    /*
+     * Outputs.
+     */
+    private final ByteBuffer buffer;
+    private final FloatBuffer observations;
+    private final ByteBuffer terminalBuffer;
+    private final FloatBuffer terminals;
+    private final float[] rewards;
+    private final boolean[] dones;
+
+    /*
+     * Inputs for the step in progress.
+     */
+    private int[] actions;
+    private long seed;
+    private final long[] episodes;
+
+    /*
+     * Workers. Each owns a contiguous slice of games and waits for the
+     * generation to change.
+     */
+    private final Thread[] workers;
+    private final AtomicInteger remaining;
+    private volatile int generation;
+    private volatile boolean open;
+    private volatile Thread stepper;
+
+    /**
+     * A public constructor for a {@code VecEnv}.
+     *
+     * @param size the number of games
+     * @param threads the number of threads to step on, including the caller's
+     */
+    public VecEnv(final int size, final int threads){
+        this.size = size;
+        engines = new Engine[size];
+        writers = new Writer[size];
+        buffer = ByteBuffer.allocateDirect(size * OBSERVATION_SIZE * Float.BYTES)
+                .order(ByteOrder.nativeOrder());
+        observations = buffer.asFloatBuffer();
+        terminalBuffer = ByteBuffer.allocateDirect(size * OBSERVATION_SIZE * Float.BYTES)
+                .order(ByteOrder.nativeOrder());
+        terminals = terminalBuffer.asFloatBuffer();
+        rewards = new float[size];
+        dones = new boolean[size];
+        episodes = new long[size];
+        for(int i = 0; i < size; i++) {
+            engines[i] = new Engine(i);
+            writers[i] = new Writer(i * OBSERVATION_SIZE, i);
+            engines[i].setObserver(writers[i]);
+        }
+        remaining = new AtomicInteger();
+        open = true;
+        workers = new Thread[Math.max(0, Math.min(threads, size) - 1)];
+        for(int w = 0; w < workers.length; w++) {
+            final int slice = w + 1;
+            workers[w] = new Thread(() -> work(slice), "SneK-env-" + slice);
+            workers[w].setDaemon(true);
+            workers[w].start();
+        }
+    }
+
+    /**
+     * Starts a new game in every slot. Game {@code i} is seeded with
+     * {@code seed + i}, and later games in the same slot with
+     * {@code seed + i + size * episode}.
+     *
+     * @param seed the base seed
+     */
+    public void reset(final long seed){
+        this.seed = seed;
+        for(int i = 0; i < size; i++) {
+            episodes[i] = 0;
+            restart(i);
+            rewards[i] = 0f;
+            dones[i] = false;
+        }
+    }
+
+    /**
+     * Advances every game by one tick.
+     *
+     * @param actions one {@code Direction} ordinal per game; a request to
+     *                reverse is ignored, as it is from the keyboard
+     */
+    public void step(final int[] actions){
+        if(actions.length != size) throw new IllegalArgumentException("Expected " + size + " actions.");
+        this.actions = actions;
+        if(workers.length == 0) {
+            stepSlice(0);
+            return;
+        }
+        stepper = Thread.currentThread();
+        remaining.set(workers.length);
+        generation++;
+        for(Thread w: workers) LockSupport.unpark(w);
+        stepSlice(0);
+        while(remaining.get() > 0) LockSupport.park(this);
+    }
+
+    private void work(final int slice){
+        int seen = 0;
+        while(open) {
+            if(generation == seen) {
+                LockSupport.park(this);
+                continue;
+            }
+            seen = generation;
+            stepSlice(slice);
+            if(remaining.decrementAndGet() == 0) LockSupport.unpark(stepper);
+        }
+    }
+
+    private void stepSlice(final int slice){
+        final int slices = workers.length + 1;
+        final int from = (int) ((long) size * slice / slices);
+        final int to = (int) ((long) size * (slice + 1) / slices);
+        for(int i = from; i < to; i++) {
+            final Engine e = engines[i];
+            rewards[i] = 0f;
+            e.steer(DIRECTIONS[actions[i] & 3]);
+            e.tick();
+            dones[i] = e.getGameStatus() == Game.GridPanel.GameStatus.DONE;
+            if(dones[i]) {
+                final int base = i * OBSERVATION_SIZE;
+                for(int j = base; j < base + OBSERVATION_SIZE; j++) terminals.put(j, observations.get(j));
+                episodes[i]++;
+                restart(i);
+            }
+        }
+    }
+
+    /*
+     * Resets one game and writes its first observation.
+     */
+    private void restart(final int i){
+        final int base = i * OBSERVATION_SIZE;
+        for(int j = 0; j < OBSERVATION_SIZE; j++) observations.put(base + j, 0f);
+        writers[i].head = -1;
+        engines[i].reset(seed + i + (long) size * episodes[i]);
+        engines[i].populate();
+    }
+
+    /**
+     * Exposes the observations: {@code size * OBSERVATION_SIZE} native-order
+     * floats, rewritten in place by every step.
+     */
+    public ByteBuffer observations(){
+        return buffer;
+    }
+
+    /**
+     * Exposes the terminal observations, laid out as the observations: for
+     * each game that ended in the last step, its last observation before it
+     * was reset. The slices of other games hold an earlier game's, or zeros.
+     * A head that ran into the wall is off the board, so it is not shown.
+     */
+    public ByteBuffer terminalObservations(){
+        return terminalBuffer;
+    }
+
+    /**
+     * Exposes the reward each game earned in the last step.
+     */
+    public float[] rewards(){
+        return rewards;
+    }
+
+    /**
+     * Exposes whether each game ended in the last step.
+     */
+    public boolean[] dones(){
+        return dones;
+    }
+
+    /**
+     * Exposes a game, for inspection between steps.
+     */
+    public Engine engine(final int i){
+        return engines[i];
+    }
+
+    public int size(){
+        return size;
+    }
+
+    @Override
+    public void close(){
+        open = false;
+        for(Thread w: workers) LockSupport.unpark(w);
+    }
+
+    /*
+     * Writes one game's state changes into its slice of the observations.
+     */
+    private final class Writer implements Engine.Observer {
+
+        final int base;
+        final int index;
+        int head;
+
+        Writer(final int base, final int index){
+            this.base = base;
+            this.index = index;
+            head = -1;
+        }
+
+        /*
+         * Sets a cell of a channel, ignoring cells off the board.
+         */
+        void set(final int channel, final int cell, final float value){
+            final int x = Engine.column(cell), y = Engine.row(cell);
+            if(x < 0 || y < 0 || x >= Engine.COLUMNS || y >= Engine.ROWS) return;
+            observations.put(base + channel * PLANE + y * Engine.COLUMNS + x, value);
+        }
+
+        @Override
+        public void headAdded(final int cell){
+            if(head >= 0) set(HEAD_CHANNEL, head, 0f);
+            set(HEAD_CHANNEL, head = cell, 1f);
+            set(BODY_CHANNEL, cell, 1f);
+        }
+        @Override
+        public void tailRemoved(final int cell){
+            if((engines[index].bits(cell) & Engine.BODY) == 0) set(BODY_CHANNEL, cell, 0f);
+        }
+        @Override
+        public void appleSpawned(final int cell){
+            set(APPLE_CHANNEL, cell, 1f);
+        }
+        @Override
+        public void appleEaten(final int cell){
+            set(APPLE_CHANNEL, cell, 0f);
+            rewards[index] += APPLE_REWARD;
+        }
+        @Override
+        public void mineSpawned(final int cell){
+            set(MINE_CHANNEL, cell, 1f);
+        }
+        @Override
+        public void mineCleared(final int cell){
+            set(MINE_CHANNEL, cell, 0f);
+        }
+        @Override
+        public void died(final Engine.Cause cause){
+            rewards[index] += DEATH_REWARD;
+        }
+    }
+
+    /**
+     * Steps {@code [size]} games with random actions for {@code [steps]}
+     * steps and reports the throughput and the bytes allocated per step.
+     */
+    public static void main(final String[] args){
+        final int size = args.length > 0? Integer.parseInt(args[0]): 256;
+        final int steps = args.length > 1? Integer.parseInt(args[1]): 20_000;
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        try(VecEnv env = new VecEnv(size, threads)) {
+            final int[] actions = new int[size];
+            final java.util.SplittableRandom random = new java.util.SplittableRandom(1);
+            env.reset(0);
+            for(int s = 0; s < steps / 10; s++) {
+                for(int i = 0; i < size; i++) actions[i] = random.nextInt(4);
+                env.step(actions);
+            }
+            long allocated = 0;
+            for(Thread t: env.workers) allocated -= mx.getThreadAllocatedBytes(t.getId());
+            allocated -= mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long episodes = 0;
+            final long start = System.nanoTime();
+            for(int s = 0; s < steps; s++) {
+                for(int i = 0; i < size; i++) actions[i] = random.nextInt(4);
+                env.step(actions);
+                for(int i = 0; i < size; i++) if(env.dones[i]) episodes++;
+            }
+            final long nanos = System.nanoTime() - start;
+            for(Thread t: env.workers) allocated += mx.getThreadAllocatedBytes(t.getId());
+            allocated += mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+            System.out.printf("%d games on %d threads: %.0f game-steps/s, %d episodes, %.2f bytes allocated/step%n",
+                    size, threads, (double) size * steps * 1e9 / nanos, episodes, allocated / (double) steps);
+        }
+    }
+
+}
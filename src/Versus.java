@@ -0,0 +1,235 @@
+import javax.swing.*;
+import javax.swing.Timer;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+
+/**
+ * Versus
+ *
+ * <p>Local two-player play: two snakes on boards of their own, seeded alike
+ * so that apples and mines fall the same way for both, racing for the
+ * higher score. The first player steers with WASD and the second with the
+ * arrows, through the {@code GridPanel}'s key actions.
+ *
+ * <p>The players are simulated in {@link Lockstep}, paced by a
+ * {@link TickScheduler} at the level of whichever player is further behind.
+ * Turns are stamped with the time the key was pressed, so a key press that
+ * reaches the panel after the tick it was made on rolls the game back and
+ * plays it again with the turn in place. Rollbacks and the time they take
+ * are shown under the boards.
+ */
+public final class Versus extends JPanel {
+
+    /**
+     * Layout: the gap between the boards and the height of the text below
+     * them, in pixels.
+     */
+    public static final int GAP;
+    public static final int STATUS_HEIGHT;
+
+    /*
+     * The size of a board, in pixels.
+     */
+    private static final int BOARD_WIDTH;
+    private static final int BOARD_HEIGHT;
+
+    private static final long serialVersionUID = 1L;
+
+    /* init */
+    static {
+        GAP = 16;
+        STATUS_HEIGHT = 48;
+        BOARD_WIDTH = Engine.COLUMNS * Engine.SQUARE_SIZE;
+        BOARD_HEIGHT = Engine.ROWS * Engine.SQUARE_SIZE;
+    }
+
+    private final Lockstep lockstep;
+    private final TickScheduler scheduler;
+    private final Timer timer;
+    private long seed;
+    private boolean paused;
+    private boolean over;
+
+    /**
+     * A public constructor for a {@code Versus} panel.
+     *
+     * @param seed the seed of the first game; later games count up from it
+     */
+    public Versus(final long seed){
+        this.seed = seed;
+        lockstep = new Lockstep(Game.GridPanel.KeyAction.players(), seed, Rules.DEFAULT, Lockstep.DEFAULT_INPUT_DELAY);
+        scheduler = new TickScheduler();
+        setPreferredSize(new Dimension(BOARD_WIDTH * 2 + GAP, BOARD_HEIGHT + STATUS_HEIGHT));
+        setBackground(Color.DARK_GRAY);
+        setFocusable(true);
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if(Game.GridPanel.KeyAction.get(e.getKeyCode()) == Game.GridPanel.KeyAction.PAUSE) {
+                    paused = !paused;
+                    return;
+                }
+                for(int p = 0; p < lockstep.playerCount(); p++) {
+                    final Game.GridPanel.Direction d = Game.GridPanel.KeyAction.get(p, e.getKeyCode()).direction();
+                    if(d != null) lockstep.press(p, d, e.getWhen());
+                }
+            }
+        });
+        timer = new Timer(Game.GridPanel.FRAME_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                frame();
+            }
+        });
+    }
+
+    /**
+     * Starts the game as the panel becomes displayable.
+     */
+    @Override
+    public void addNotify(){
+        super.addNotify();
+        timer.start();
+    }
+
+    /**
+     * Stops the game as the panel stops being displayable.
+     */
+    @Override
+    public void removeNotify(){
+        timer.stop();
+        super.removeNotify();
+    }
+
+    /*
+     * Runs the ticks due this frame, and offers another game once both
+     * players are out.
+     */
+    private void frame(){
+        final long now = System.nanoTime();
+        if(paused || over) {
+            scheduler.idle(now);
+            return;
+        }
+        scheduler.frame(now);
+        while(lockstep.isRunning() && scheduler.next()) {
+            lockstep.advance();
+            scheduler.setLevel(slowestLevel());
+        }
+        repaint();
+        if(!lockstep.isRunning()) {
+            over = true;
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    gameOver();
+                }
+            });
+        }
+    }
+
+    /*
+     * The lowest level among the players still playing.
+     */
+    private int slowestLevel(){
+        int level = Integer.MAX_VALUE;
+        for(int p = 0; p < lockstep.playerCount(); p++) {
+            final Engine e = lockstep.player(p);
+            if(e.getGameStatus().isRunning()) level = Math.min(level, e.getLevel());
+        }
+        return level == Integer.MAX_VALUE? 1: level;
+    }
+
+    /*
+     * Announces the winner and starts another game, or quits.
+     */
+    private void gameOver(){
+        final int first = lockstep.player(0).getScore(), second = lockstep.player(1).getScore();
+        final int option = JOptionPane.showConfirmDialog(
+                this,
+                String.format("%s%nPlayer 1: %d%nPlayer 2: %d%nPlay again?",
+                        first == second? "It's a draw!": first > second? "Player 1 wins!": "Player 2 wins!",
+                        first, second),
+                "Game over",
+                JOptionPane.YES_NO_OPTION
+        );
+        if(option == JOptionPane.NO_OPTION) System.exit(0);
+        lockstep.reset(++seed);
+        scheduler.reset();
+        over = false;
+        requestFocusInWindow();
+    }
+
+    /**
+     * Paints both boards and the status line.
+     *
+     * @param g the panel's {@code Graphics} Object.
+     */
+    @Override
+    protected void paintComponent(final Graphics g){
+        super.paintComponent(g);
+        for(int p = 0; p < lockstep.playerCount(); p++) {
+            final int left = p * (BOARD_WIDTH + GAP);
+            final Engine e = lockstep.player(p);
+            paintBoard(g, e, left);
+            g.setColor(Color.WHITE);
+            g.drawString(String.format("Player %d (%s)     Level: %d     Score: %d     Tail Bites: %d%s",
+                    p + 1, p == 0? "WASD": "arrows", e.getLevel(), e.getScore(), e.getTailBites(),
+                    e.getGameStatus().isRunning()? "": "     " + e.getCause().title()),
+                    left + 4, BOARD_HEIGHT + 18);
+        }
+        g.setColor(Color.LIGHT_GRAY);
+        g.drawString(String.format("Tick %d     Rollbacks: %d (last %d, deepest %d ticks)     Re-simulation: %.1fus/tick%s",
+                lockstep.getTick(), lockstep.rollbacks(), lockstep.lastRollbackDepth(),
+                lockstep.maxRollbackDepth(), lockstep.resimulationNanosPerTick() / 1e3,
+                paused? "     Paused": ""), 4, BOARD_HEIGHT + 40);
+    }
+
+    /*
+     * Paints a board cell by cell, as GridPanel paints its elements.
+     */
+    private static void paintBoard(final Graphics g, final Engine e, final int left){
+        final int size = Engine.SQUARE_SIZE, buff = Game.GridPanel.SQUARE_BUFF;
+        g.setColor(Palette.color(Palette.BACKGROUND));
+        g.fillRect(left, 0, BOARD_WIDTH, BOARD_HEIGHT);
+        final int head = e.length() > 0? e.head(): -1;
+        for(int y = 0; y < Engine.ROWS; y++) {
+            for(int x = 0; x < Engine.COLUMNS; x++) {
+                final int c = Engine.cell(x, y);
+                final int bits = e.bits(c);
+                final int color = c == head? Palette.HEAD:
+                        (bits & Engine.BODY) != 0? Palette.SEGMENT:
+                        (bits & Engine.DETONATED) != 0? Palette.BLAST:
+                        (bits & Engine.MINE) != 0? Palette.MINE:
+                        (bits & Engine.APPLE) != 0? Palette.APPLE: Palette.BACKGROUND;
+                if(color == Palette.BACKGROUND) continue;
+                g.setColor(Palette.color(color));
+                g.fillRect(left + x * size + buff, y * size + buff, size - buff, size - buff);
+            }
+        }
+    }
+
+    //Show.
+    public static void main(final String[] args){
+        final long seed = args.length > 0? Long.parseLong(args[0]): System.nanoTime();
+        SwingUtilities.invokeLater(new Runnable(){
+            @Override
+            public void run() {
+                final JFrame frame = new JFrame("SneK Versus");
+                final Image icon = Assets.image(Game.ICON_PATH);
+                if(icon != null) frame.setIconImage(icon);
+                final Versus versus = new Versus(seed);
+                frame.add(versus);
+                frame.pack();
+                frame.setResizable(false);
+                frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                frame.setVisible(true);
+                versus.requestFocusInWindow();
+            }
+        });
+    }
+
+}